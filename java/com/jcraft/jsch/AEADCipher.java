@@ -0,0 +1,66 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch;
+
+/*
+ * An AEADCipher (RFC 5116) both encrypts and authenticates SSH packets, so no
+ * separate MAC is used along with it.  The packet length field is
+ * authenticated but is either sent in the clear (AES-GCM, RFC 5647) or
+ * encrypted with a separate key (chacha20-poly1305@openssh.com), so packets
+ * are processed as a whole rather than as a stream of cipher blocks, and an
+ * AEADCipher does not implement the Cipher interface.  getIVSize() returns
+ * the block size to which packets are padded, and getBlockSize() returns the
+ * key size.  mode is Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE.
+ */
+public interface AEADCipher{
+  int getIVSize();
+  int getBlockSize();
+  int getTagSize();
+  void init(int mode, byte[] key, byte[] iv) throws Exception;
+
+  /*
+   * Returns the length of the packet whose first 4 bytes are foo[s..s+3],
+   * without modifying foo.
+   */
+  int getPacketLength(int seq, byte[] foo, int s) throws Exception;
+
+  /*
+   * Encrypts the len-byte packet (including the length field) in buf and
+   * writes the authentication tag to buf[len..len+getTagSize()-1].
+   */
+  void encrypt(int seq, byte[] buf, int len) throws Exception;
+
+  /*
+   * Verifies the authentication tag that follows the len-byte packet in buf
+   * and then decrypts the packet.  An exception is thrown, and buf is left
+   * undecrypted, if the packet is not authentic.
+   */
+  void decrypt(int seq, byte[] buf, int len) throws Exception;
+}
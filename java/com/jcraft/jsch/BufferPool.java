@@ -0,0 +1,75 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch;
+
+/*
+ * A BufferPool recycles the buffers into which packets are received.  When a
+ * channel has a DataSink, the session thread hands the whole packet buffer to
+ * the sink rather than copying the data out of it, and it continues with a
+ * buffer from the pool.  The sink returns the buffer to the pool, through
+ * Channel.recycle(), once it has consumed the data.
+ */
+class BufferPool{
+  private final int size;
+  private final byte[][] free;
+  private int count=0;
+  private long allocated=0;
+  private long reused=0;
+
+  BufferPool(int size, int max){
+    this.size=size;
+    free=new byte[max][];
+  }
+
+  // Returns a buffer of at least len bytes.
+  synchronized byte[] get(int len){
+    for(int i=count-1; i>=0; i--){
+      byte[] foo=free[i];
+      if(foo.length>=len){
+        free[i]=free[--count];
+        free[count]=null;
+        reused++;
+        return foo;
+      }
+    }
+    allocated++;
+    return new byte[len>size ? len : size];
+  }
+
+  synchronized void put(byte[] foo){
+    if(foo==null || foo.length<size || count==free.length){
+      return;
+    }
+    free[count++]=foo;
+  }
+
+  synchronized long getAllocated(){ return allocated; }
+  synchronized long getReused(){ return reused; }
+}
@@ -101,6 +101,14 @@ public abstract class Channel implements Runnable{
   volatile int lwsize=lwsize_max;     // local initial window size
   volatile int lmpsize=0x4000;     // local maximum packet size
 
+  volatile DataSink sink=null;
+
+  static final int DEFAULT_WINDOW_SIZE_LIMIT=0x1000000;
+  private int lwsize_limit=0;     // upper bound for window auto-tuning
+  private long tune_start=0;
+  private long tune_bytes=0;
+  long open_time=0;
+
   volatile long rwsize=0;         // remote initial window size
   volatile int rmpsize=0;        // remote maximum packet size
 
@@ -179,6 +187,23 @@ public abstract class Channel implements Runnable{
   public void setInputStream(InputStream in, boolean dontclose){
     io.setInputStream(in, dontclose);
   }
+  /**
+   * Sets a sink to which the channel data will be handed by reference,
+   * instead of being copied to the output stream.
+   */
+  public void setDataSink(DataSink sink){
+    this.sink=sink;
+  }
+  /**
+   * Returns a buffer that was passed to {@link DataSink#put} to the session's
+   * buffer pool.
+   */
+  public void recycle(byte[] foo){
+    Session _session=session;
+    if(_session!=null){
+      _session.pool.put(foo);
+    }
+  }
   public void setOutputStream(OutputStream out){
     io.setOutputStream(out, false);
   }
@@ -418,6 +443,76 @@ public abstract class Channel implements Runnable{
   }
   void setLocalWindowSizeMax(int foo){ this.lwsize_max=foo; }
   void setLocalWindowSize(int foo){ this.lwsize=foo; }
+
+  /*
+   * consumeLocalWindow() is called by the session thread when len bytes of
+   * data have been received.  It returns the number of bytes by which the
+   * local window should be adjusted, or 0 if no adjustment is needed yet.
+   *
+   * The local window is auto-tuned, similarly to HPN-SSH and to TCP receive
+   * buffer auto-tuning.  Once per round trip (as measured by the session),
+   * the amount of data received during that round trip is compared with the
+   * window size.  If more than half of the window was in flight, then the
+   * window, rather than the network, is probably limiting throughput, so the
+   * window is grown to twice the amount of data in flight, up to the limit
+   * specified by the "max_window_size" config option.  Since the adjustment
+   * threshold is half of the window, it grows along with the window, and
+   * the growth itself is granted to the peer immediately.
+   */
+  int consumeLocalWindow(int len){
+    lwsize-=len;
+    autoTuneLocalWindow(len);
+    if(lwsize<lwsize_max/2){
+      int foo=lwsize_max-lwsize;
+      lwsize=lwsize_max;
+      return foo;
+    }
+    return 0;
+  }
+
+  int getLocalWindowSizeLimit(){
+    if(lwsize_limit==0){
+      lwsize_limit=DEFAULT_WINDOW_SIZE_LIMIT;
+      try{
+        String foo=getSession().getConfig("max_window_size");
+        if(foo!=null) lwsize_limit=Integer.parseInt(foo);
+      }
+      catch(Exception e){
+      }
+    }
+    return lwsize_limit;
+  }
+
+  private void autoTuneLocalWindow(int len){
+    if(lwsize_max>=getLocalWindowSizeLimit()) return;
+
+    long rtt=0;
+    try{ rtt=getSession().getRTT(); }
+    catch(JSchException e){ }
+    if(rtt<=0) return;
+
+    long now=System.nanoTime();
+    if(tune_start==0){
+      tune_start=now;
+      tune_bytes=0;
+    }
+    tune_bytes+=len;
+    if(now-tune_start<rtt) return;
+
+    long inflight=tune_bytes*rtt/(now-tune_start);
+    tune_start=now;
+    tune_bytes=0;
+    if(inflight*2>lwsize_max){
+      int foo=(int)Math.min(Math.max(inflight*2, (long)lwsize_max*2),
+                            (long)lwsize_limit);
+      if(JSch.getLogger().isEnabled(Logger.DEBUG)){
+        JSch.getLogger().log(Logger.DEBUG, 
+                             "Growing local window from "+lwsize_max+
+                             " to "+foo+" (RTT="+(rtt/1000)+" us)");
+      }
+      lwsize_max=foo;
+    }
+  }
   void setLocalPacketSize(int foo){ this.lmpsize=foo; }
   synchronized void setRemoteWindowSize(long foo){ this.rwsize=foo; }
   synchronized void addRemoteWindowSize(long foo){ 
@@ -446,6 +541,9 @@ public abstract class Channel implements Runnable{
 
   void eof_remote(){
     eof_remote=true;
+    if(sink!=null){
+      sink.eof();
+    }
     try{
       io.out_close();
     }
@@ -580,6 +678,9 @@ public abstract class Channel implements Runnable{
 
       thread=null;
 
+      if(sink!=null){
+        sink.eof();
+      }
       try{
         if(io!=null){
           io.close();
@@ -729,6 +830,7 @@ public abstract class Channel implements Runnable{
     }
 
     Packet packet = genChannelOpenPacket();
+    open_time=System.nanoTime();
     _session.write(packet);
 
     int retry=2000;
@@ -31,6 +31,10 @@ package com.jcraft.jsch;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.HashMap;
 import java.util.Vector;
 
 public class ChannelSftp extends ChannelSession{
@@ -184,6 +188,9 @@ public class ChannelSftp extends ChannelSession{
 
   private RequestQueue rq = new RequestQueue(16);
 
+  private static final long PARALLEL_SEGMENT_SIZE_MIN=1024*1024;
+  private static final int PARALLEL_SEGMENTS_PER_STREAM=8;
+
   /**
    * Specify how many requests may be sent at any one time.
    * Increasing this value may slightly improve file transfer speed but will
@@ -1262,6 +1269,522 @@ public class ChannelSftp extends ChannelSession{
     } 
   }
 
+  /**
+   * Downloads <code>src</code> to <code>dst</code> over up to
+   * <code>streams</code> SFTP channels on this channel's session.
+   * The file is split into segments, which the channels take in turn,
+   * request concurrently, and write to <code>dst</code> at their own
+   * offsets, so the transfer is not limited by a single channel's
+   * request pipeline.  Each channel starts with up to
+   * {@link #getBulkRequests()} outstanding requests and grows that number
+   * with the measured round-trip time.  <code>monitor</code> receives the
+   * aggregate progress of all channels, one call at a time.  If the server
+   * refuses to open more channels, the transfer uses those that could be
+   * opened.
+   *
+   * @param src source file
+   * @param dst destination file or directory
+   * @param streams maximum number of channels to use
+   * @param monitor progress monitor
+   */
+  public void getParallel(String src, String dst, int streams,
+                          SftpProgressMonitor monitor) throws SftpException{
+    boolean _dstExist=false;
+    String _dst=null;
+    try{
+      ((MyPipedInputStream)io_in).updateReadSide();
+
+      src=remoteAbsolutePath(src);
+      src=isUnique(src);
+      dst=localAbsolutePath(dst);
+
+      SftpATTRS attr=_stat(src);
+      if(attr.isDir()){
+        throw new SftpException(SSH_FX_FAILURE, 
+                                "not supported to get directory "+src);
+      }
+      if(new File(dst).isDirectory()){
+        if(!dst.endsWith(file_separator)){
+          dst+=file_separator;
+        }
+        dst+=src.substring(src.lastIndexOf('/')+1);
+      }
+      _dst=dst;
+      _dstExist=new File(_dst).exists();
+
+      long size=attr.getSize();
+      if(monitor!=null){
+        monitor.init(SftpProgressMonitor.GET, src, _dst, size);
+      }
+
+      boolean done=false;
+      RandomAccessFile raf=new RandomAccessFile(_dst, "rw");
+      try{
+        raf.setLength(size);
+        done=_parallel(SftpProgressMonitor.GET, Util.str2byte(src, fEncoding),
+                       raf.getChannel(), size, streams, monitor);
+      }
+      finally{
+        raf.close();
+      }
+      // The segments are not written in order, so a cancelled transfer
+      // leaves holes rather than a partial file.
+      if(!done && !_dstExist){
+        new File(_dst).delete();
+      }
+
+      if(monitor!=null)monitor.end();
+    }
+    catch(Exception e){
+      if(!_dstExist && _dst!=null){
+        File _dstFile=new File(_dst);
+        if(_dstFile.exists()){
+          _dstFile.delete();
+        }
+      }
+      if(e instanceof SftpException) throw (SftpException)e;
+      if(e instanceof Throwable)
+        throw new SftpException(SSH_FX_FAILURE, "", (Throwable)e);
+      throw new SftpException(SSH_FX_FAILURE, "");
+    }
+  }
+
+  /**
+   * Uploads <code>src</code> to <code>dst</code> over up to
+   * <code>streams</code> SFTP channels on this channel's session.
+   * This is the counterpart of
+   * {@link #getParallel(String, String, int, SftpProgressMonitor)}.
+   * The segments are read from <code>src</code> at their own offsets and
+   * written to <code>dst</code> concurrently, and the progress reported to
+   * <code>monitor</code> counts the data acknowledged by the server.
+   *
+   * @param src source file
+   * @param dst destination file or directory
+   * @param streams maximum number of channels to use
+   * @param monitor progress monitor
+   */
+  public void putParallel(String src, String dst, int streams,
+                          SftpProgressMonitor monitor) throws SftpException{
+    try{
+      ((MyPipedInputStream)io_in).updateReadSide();
+
+      src=localAbsolutePath(src);
+      dst=remoteAbsolutePath(dst);
+
+      Vector v=glob_remote(dst);
+      int vsize=v.size();
+      if(vsize!=1){
+        if(vsize==0){
+          if(isPattern(dst))
+            throw new SftpException(SSH_FX_FAILURE, dst);
+          else
+            dst=Util.unquote(dst);
+        }
+        throw new SftpException(SSH_FX_FAILURE, v.toString());
+      }
+      else{
+        dst=(String)(v.elementAt(0));
+      }
+
+      if(isRemoteDir(dst)){
+        if(!dst.endsWith("/")){
+          dst+="/";
+        }
+        dst+=new File(src).getName();
+      }
+
+      File srcFile=new File(src);
+      if(srcFile.isDirectory()){
+        throw new SftpException(SSH_FX_FAILURE, 
+                                "not supported to put directory "+src);
+      }
+      long size=srcFile.length();
+      if(monitor!=null){
+        monitor.init(SftpProgressMonitor.PUT, src, dst, size);
+      }
+
+      // Create or truncate the file once, so that the channels can then
+      // write their segments in any order.
+      byte[] dstb=Util.str2byte(dst, fEncoding);
+      sendOPENW(dstb);
+      Header header=new Header();
+      byte[] handle=getHandle(header);
+      _sendCLOSE(handle, header);
+
+      FileInputStream fis=new FileInputStream(srcFile);
+      try{
+        _parallel(SftpProgressMonitor.PUT, dstb, fis.getChannel(), size,
+                  streams, monitor);
+      }
+      finally{
+        fis.close();
+      }
+
+      if(monitor!=null)monitor.end();
+    }
+    catch(Exception e){
+      if(e instanceof SftpException) throw (SftpException)e;
+      if(e instanceof Throwable)
+        throw new SftpException(SSH_FX_FAILURE, e.toString(), (Throwable)e);
+      throw new SftpException(SSH_FX_FAILURE, e.toString());
+    }
+  }
+
+  // Runs a parallel transfer on this channel and on up to streams-1 new
+  // channels.  Returns false if the monitor cancelled the transfer.
+  private boolean _parallel(final int op, final byte[] path,
+                            final FileChannel file, long size, int streams,
+                            SftpProgressMonitor monitor) throws Exception{
+    final Transfer t=new Transfer(size, streams, monitor);
+    long segments=(size+t.segment_size-1)/t.segment_size;
+    if(streams>segments) streams=(int)segments;
+
+    Vector channels=new Vector();
+    Vector threads=new Vector();
+    long start=System.nanoTime();
+    try{
+      for(int i=1; i<streams; i++){
+        final ChannelSftp channel;
+        try{
+          channel=(ChannelSftp)getSession().openChannel("sftp");
+          channel.fEncoding=fEncoding;
+          channel.fEncoding_is_utf8=fEncoding_is_utf8;
+          channel.connect();
+        }
+        catch(JSchException e){
+          if(JSch.getLogger().isEnabled(Logger.INFO)){
+            JSch.getLogger().log(Logger.INFO, 
+                                 "Could not open SFTP channel "+(i+1)+": "+
+                                 e.getMessage());
+          }
+          break;
+        }
+        channels.addElement(channel);
+        Thread thread=new Thread(new Runnable(){
+            public void run(){ channel.transfer(op, path, file, t); }
+          });
+        thread.setName("SFTP transfer "+(i+1));
+        thread.setDaemon(true);
+        threads.addElement(thread);
+        thread.start();
+      }
+
+      transfer(op, path, file, t);
+
+      for(int i=0; i<threads.size(); i++){
+        Thread thread=(Thread)threads.elementAt(i);
+        while(thread.isAlive()){
+          try{ thread.join(); }
+          catch(InterruptedException e){ t.abort(e); }
+        }
+      }
+    }
+    finally{
+      for(int i=0; i<channels.size(); i++){
+        ((ChannelSftp)channels.elementAt(i)).disconnect();
+      }
+    }
+
+    if(t.error!=null){
+      throw t.error;
+    }
+
+    if(JSch.getLogger().isEnabled(Logger.INFO)){
+      long time=System.nanoTime()-start;
+      JSch.getLogger().log(Logger.INFO, 
+                           "Transferred "+t.count+" bytes over "+
+                           (channels.size()+1)+" SFTP channel(s) in "+
+                           (time/1000000)+" ms ("+
+                           (time>0 ? (long)(t.count*1e9/time) : 0)+
+                           " bytes/s)");
+    }
+    return !t.aborted;
+  }
+
+  private void transfer(int op, byte[] path, FileChannel file, Transfer t){
+    try{
+      if(op==SftpProgressMonitor.GET){
+        _get(path, file, t);
+      }
+      else{
+        _put(file, path, t);
+      }
+    }
+    catch(Exception e){
+      t.abort(e);
+    }
+  }
+
+  // Reads the segments handed out by t and writes them to dst.  Replies
+  // may arrive in any order, since each one is written at its own offset.
+  private void _get(byte[] srcb, FileChannel dst, Transfer t) throws Exception{
+    sendOPENR(srcb);
+    Header header=new Header();
+    byte[] handle=getHandle(header);
+
+    int request_len=buf.buffer.length-13;
+    if(server_version==0){ request_len=1024; }
+
+    Pipeline pipeline=new Pipeline(request_len);
+    HashMap<Integer, long[]> requests=new HashMap<Integer, long[]>();
+    ByteBuffer bb=ByteBuffer.wrap(buf.buffer);
+    long request_offset=0;
+    long request_end=0;
+
+    while(true){
+      while(requests.size()<pipeline.max && !t.aborted){
+        if(request_offset>=request_end){
+          long foo=t.next();
+          if(foo<0) break;
+          request_offset=foo;
+          request_end=t.end(foo);
+        }
+        int len=(int)Math.min(request_len, request_end-request_offset);
+        long sent=System.nanoTime();
+        sendREAD(handle, request_offset, len);
+        requests.put(seq-1, 
+                     new long[]{request_offset, len, sent});
+        request_offset+=len;
+      }
+      if(requests.size()==0) break;
+
+      header=header(buf, header);
+      int length=header.length;
+      int type=header.type;
+
+      long[] rr=requests.remove(header.rid);
+      if(rr==null){
+        throw new SftpException(SSH_FX_FAILURE, 
+                                "unknown request id "+header.rid);
+      }
+
+      if(type==SSH_FXP_STATUS){
+        fill(buf, length);
+        int i=buf.getInt();
+        if(i==SSH_FX_EOF){      // the file has been truncated
+          continue;
+        }
+        throwStatusError(buf, i);
+      }
+      if(type!=SSH_FXP_DATA){
+        throw new SftpException(SSH_FX_FAILURE, "invalid type="+type);
+      }
+
+      buf.rewind();
+      fill(buf.buffer, 0, 4); length-=4;
+      int length_of_data=buf.getInt();
+      int optional_data=length-length_of_data;
+
+      long position=rr[0];
+      int foo=length_of_data;
+      while(foo>0){
+        int bar=fill(buf.buffer, 0, Math.min(foo, buf.buffer.length));
+        if(!t.aborted){
+          bb.clear();
+          bb.limit(bar);
+          while(bb.hasRemaining()){
+            position+=dst.write(bb, position);
+          }
+        }
+        foo-=bar;
+      }
+      if(optional_data>0){
+        skip(optional_data);
+      }
+
+      if(length_of_data<rr[1] && !t.aborted){
+        long offset=rr[0]+length_of_data;
+        int len=(int)(rr[1]-length_of_data);
+        long sent=System.nanoTime();
+        sendREAD(handle, offset, len);
+        requests.put(seq-1, 
+                     new long[]{offset, len, sent});
+      }
+
+      if(length_of_data>0){
+        t.count(length_of_data);
+        pipeline.update(length_of_data, rr[2]);
+      }
+    }
+
+    _sendCLOSE(handle, header);
+  }
+
+  // Reads the segments handed out by t from src and writes them to the
+  // remote file, which must already exist.
+  private void _put(FileChannel src, byte[] dstb, Transfer t) throws Exception{
+    sendOPEN(dstb, SSH_FXF_WRITE);
+    Header header=new Header();
+    byte[] handle=getHandle(header);
+
+    // As in _put(InputStream, ...), the data is read directly into obuf.
+    int _s=5+13+21+handle.length;
+    int request_len=obuf.buffer.length-_s-Session.buffer_margin;
+
+    Pipeline pipeline=new Pipeline(request_len);
+    HashMap<Integer, long[]> requests=new HashMap<Integer, long[]>();
+    ByteBuffer bb=ByteBuffer.wrap(obuf.buffer);
+    long request_offset=0;
+    long request_end=0;
+
+    while(true){
+      while(requests.size()<pipeline.max && !t.aborted){
+        if(request_offset>=request_end){
+          long foo=t.next();
+          if(foo<0) break;
+          request_offset=foo;
+          request_end=t.end(foo);
+        }
+        int len=(int)Math.min(request_len, request_end-request_offset);
+        bb.clear();
+        bb.position(_s);
+        bb.limit(_s+len);
+        while(bb.hasRemaining()){
+          if(src.read(bb, request_offset+bb.position()-_s)<0){
+            throw new SftpException(SSH_FX_FAILURE, 
+                                    "unexpected end of local file");
+          }
+        }
+        long sent=System.nanoTime();
+        sendWRITE(handle, request_offset, obuf.buffer, 0, len);
+        requests.put(seq-1, 
+                     new long[]{request_offset, len, sent});
+        request_offset+=len;
+      }
+      if(requests.size()==0) break;
+
+      checkStatus(ackid, header);
+      long[] rr=requests.remove(ackid[0]);
+      if(rr==null){
+        throw new SftpException(SSH_FX_FAILURE, 
+                                "unknown request id "+ackid[0]);
+      }
+      t.count(rr[1]);
+      pipeline.update((int)rr[1], rr[2]);
+    }
+
+    _sendCLOSE(handle, header);
+  }
+
+  private byte[] getHandle(Header header) throws Exception{
+    header=header(buf, header);
+    int length=header.length;
+    int type=header.type;
+
+    fill(buf, length);
+
+    if(type!=SSH_FXP_STATUS && type!=SSH_FXP_HANDLE){
+      throw new SftpException(SSH_FX_FAILURE, "invalid type="+type);
+    }
+    if(type==SSH_FXP_STATUS){
+      int i=buf.getInt();
+      throwStatusError(buf, i);
+    }
+    return buf.getString();
+  }
+
+  /*
+   * State shared by the channels taking part in a parallel transfer.
+   * Segments are handed out in order, so a channel that runs ahead simply
+   * takes more of them.  Calls to the monitor are serialized, so it need
+   * not be thread-safe.
+   */
+  private static class Transfer{
+    final long size;
+    final long segment_size;
+    final SftpProgressMonitor monitor;
+    long next=0;
+    long count=0;
+    volatile boolean aborted=false;
+    Exception error=null;
+
+    Transfer(long size, int streams, SftpProgressMonitor monitor){
+      this.size=size;
+      this.segment_size=Math.max(size/((long)Math.max(streams, 1)*
+                                       PARALLEL_SEGMENTS_PER_STREAM),
+                                 PARALLEL_SEGMENT_SIZE_MIN);
+      this.monitor=monitor;
+    }
+
+    // Returns the offset of the next segment, or -1 if there are none left.
+    synchronized long next(){
+      if(aborted || next>=size) return -1;
+      long foo=next;
+      next+=segment_size;
+      return foo;
+    }
+
+    long end(long start){
+      return Math.min(start+segment_size, size);
+    }
+
+    synchronized void count(long foo){
+      if(aborted) return;
+      count+=foo;
+      if(monitor!=null && !monitor.count(foo)){
+        aborted=true;
+      }
+    }
+
+    synchronized void abort(Exception e){
+      if(error==null) error=e;
+      aborted=true;
+    }
+  }
+
+  /*
+   * Limits the number of requests that a channel keeps outstanding during a
+   * parallel transfer.  The limit starts at getBulkRequests(), and once per
+   * round trip, it is raised to twice the number of requests that the
+   * measured throughput and round-trip time keep in flight, so it follows
+   * the bandwidth-delay product of the path rather than stopping at a fixed
+   * size.  It never exceeds the largest local window that the channel will
+   * grow to, since the server cannot send more than that at once anyway.
+   */
+  private class Pipeline{
+    final int request_len;
+    final int request_limit;
+    int max;
+    long tune_start=0;
+    long tune_bytes=0;
+
+    Pipeline(int request_len){
+      this.request_len=request_len;
+      max=rq.size();
+      request_limit=Math.max(max, getLocalWindowSizeLimit()/request_len);
+    }
+
+    void update(int len, long sent) throws JSchException{
+      long now=System.nanoTime();
+      Session session=getSession();
+      session.updateRTT(now-sent);
+
+      if(max>=request_limit) return;
+
+      long rtt=session.getRTT();
+      if(rtt<=0) return;
+      if(tune_start==0){
+        tune_start=now;
+        tune_bytes=0;
+      }
+      tune_bytes+=len;
+      if(now-tune_start<rtt) return;
+
+      long inflight=tune_bytes*rtt/(now-tune_start);
+      tune_start=now;
+      tune_bytes=0;
+      int foo=(int)Math.min(inflight*2/request_len+1, (long)request_limit);
+      if(foo>max){
+        if(JSch.getLogger().isEnabled(Logger.DEBUG)){
+          JSch.getLogger().log(Logger.DEBUG, 
+                               "Growing SFTP request pipeline from "+max+
+                               " to "+foo+" (RTT="+(rtt/1000)+" us)");
+        }
+        max=foo;
+      }
+    }
+  }
+
   public InputStream get(String src) throws SftpException{
     return get(src, null, 0L);
   }
@@ -40,13 +40,13 @@ public class JSch{
 
   static java.util.Hashtable config=new java.util.Hashtable();
   static{
-    config.put("kex", "diffie-hellman-group1-sha1,diffie-hellman-group14-sha1,diffie-hellman-group-exchange-sha1");
+    config.put("kex", "curve25519-sha256,curve25519-sha256@libssh.org,ecdh-sha2-nistp256,ecdh-sha2-nistp384,ecdh-sha2-nistp521,diffie-hellman-group1-sha1,diffie-hellman-group14-sha1,diffie-hellman-group-exchange-sha1");
     config.put("server_host_key", "ssh-rsa,ssh-dss");
 
     config.put("cipher.s2c", 
-               "aes128-ctr,aes128-cbc,3des-ctr,3des-cbc,blowfish-cbc,aes192-cbc,aes256-cbc");
+               "aes128-gcm@openssh.com,aes256-gcm@openssh.com,chacha20-poly1305@openssh.com,aes128-ctr,aes128-cbc,3des-ctr,3des-cbc,blowfish-cbc,aes192-cbc,aes256-cbc");
     config.put("cipher.c2s",
-               "aes128-ctr,aes128-cbc,3des-ctr,3des-cbc,blowfish-cbc,aes192-cbc,aes256-cbc");
+               "aes128-gcm@openssh.com,aes256-gcm@openssh.com,chacha20-poly1305@openssh.com,aes128-ctr,aes128-cbc,3des-ctr,3des-cbc,blowfish-cbc,aes192-cbc,aes256-cbc");
 
     config.put("mac.s2c", "hmac-md5,hmac-sha1,hmac-sha2-256,hmac-sha1-96,hmac-md5-96");
     config.put("mac.c2s", "hmac-md5,hmac-sha1,hmac-sha2-256,hmac-sha1-96,hmac-md5-96");
@@ -66,8 +66,15 @@ public class JSch{
 	                        "com.jcraft.jsch.DHG14");
     config.put("diffie-hellman-group-exchange-sha256", 
                "com.jcraft.jsch.DHGEX256"); // avaibale since JDK1.4.2.
+    config.put("ecdh-sha2-nistp256", "com.jcraft.jsch.DHEC256");
+    config.put("ecdh-sha2-nistp384", "com.jcraft.jsch.DHEC384");
+    config.put("ecdh-sha2-nistp521", "com.jcraft.jsch.DHEC521");
+    config.put("curve25519-sha256", "com.jcraft.jsch.DH25519");
+    config.put("curve25519-sha256@libssh.org", "com.jcraft.jsch.DH25519");
 
     config.put("dh",            "com.jcraft.jsch.jce.DH");
+    config.put("ecdh-sha2-nistp", "com.jcraft.jsch.jce.ECDHN");
+    config.put("xdh",           "com.jcraft.jsch.jce.XDH");
     config.put("3des-cbc",      "com.jcraft.jsch.jce.TripleDESCBC");
     config.put("blowfish-cbc",  "com.jcraft.jsch.jce.BlowfishCBC");
     config.put("hmac-sha1",     "com.jcraft.jsch.jce.HMACSHA1");
@@ -80,6 +87,8 @@ public class JSch{
     config.put("hmac-md5-96",   "com.jcraft.jsch.jce.HMACMD596");
     config.put("sha-1",         "com.jcraft.jsch.jce.SHA1");
     config.put("sha-256",         "com.jcraft.jsch.jce.SHA256");
+    config.put("sha-384",         "com.jcraft.jsch.jce.SHA384");
+    config.put("sha-512",         "com.jcraft.jsch.jce.SHA512");
     config.put("md5",           "com.jcraft.jsch.jce.MD5");
     config.put("signature.dss", "com.jcraft.jsch.jce.SignatureDSA");
     config.put("signature.rsa", "com.jcraft.jsch.jce.SignatureRSA");
@@ -96,6 +105,10 @@ public class JSch{
     config.put("aes128-ctr",    "com.jcraft.jsch.jce.AES128CTR");
     config.put("aes192-ctr",    "com.jcraft.jsch.jce.AES192CTR");
     config.put("aes256-ctr",    "com.jcraft.jsch.jce.AES256CTR");
+    config.put("aes128-gcm@openssh.com", "com.jcraft.jsch.jce.AES128GCM");
+    config.put("aes256-gcm@openssh.com", "com.jcraft.jsch.jce.AES256GCM");
+    config.put("chacha20-poly1305@openssh.com",
+               "com.jcraft.jsch.jcraft.ChaCha20Poly1305");
     config.put("3des-ctr",      "com.jcraft.jsch.jce.TripleDESCTR");
     config.put("arcfour",      "com.jcraft.jsch.jce.ARCFOUR");
     config.put("arcfour128",      "com.jcraft.jsch.jce.ARCFOUR128");
@@ -108,8 +121,8 @@ public class JSch{
     config.put("userauth.gssapi-with-mic",    "com.jcraft.jsch.UserAuthGSSAPIWithMIC");
     config.put("gssapi-with-mic.krb5",    "com.jcraft.jsch.jgss.GSSContextKrb5");
 
-    config.put("zlib",             "com.jcraft.jsch.jcraft.Compression");
-    config.put("zlib@openssh.com", "com.jcraft.jsch.jcraft.Compression");
+    config.put("zlib",             "com.jcraft.jsch.juz.Compression");
+    config.put("zlib@openssh.com", "com.jcraft.jsch.juz.Compression");
 
     config.put("pbkdf", "com.jcraft.jsch.jce.PBKDF");
 
@@ -118,8 +131,8 @@ public class JSch{
 
     config.put("PreferredAuthentications", "gssapi-with-mic,publickey,keyboard-interactive,password");
 
-    config.put("CheckCiphers", "aes256-ctr,aes192-ctr,aes128-ctr,aes256-cbc,aes192-cbc,aes128-cbc,3des-ctr,arcfour,arcfour128,arcfour256");
-    config.put("CheckKexes", "diffie-hellman-group14-sha1");
+    config.put("CheckCiphers", "aes256-gcm@openssh.com,aes128-gcm@openssh.com,aes256-ctr,aes192-ctr,aes128-ctr,aes256-cbc,aes192-cbc,aes128-cbc,3des-ctr,arcfour,arcfour128,arcfour256");
+    config.put("CheckKexes", "curve25519-sha256,curve25519-sha256@libssh.org,diffie-hellman-group14-sha1");
 
     config.put("MaxAuthTries", "6");
     config.put("ClearAllForwardings", "no");
@@ -133,6 +133,13 @@ public abstract class KeyExchange{
 	guess[i]="";
       }
       else if(guess[i]==null){
+        // AEAD ciphers provide their own integrity protection, so the MAC
+        // algorithms need not match.
+        if((i==PROPOSAL_MAC_ALGS_CTOS && isAEAD(guess[PROPOSAL_ENC_ALGS_CTOS])) ||
+           (i==PROPOSAL_MAC_ALGS_STOC && isAEAD(guess[PROPOSAL_ENC_ALGS_STOC]))){
+          guess[i]="";
+          continue;
+        }
 	return null;
       }
     }
@@ -153,6 +160,11 @@ public abstract class KeyExchange{
     return guess;
   }
 
+  static boolean isAEAD(String cipher){
+    return cipher.equals("chacha20-poly1305@openssh.com") ||
+           cipher.endsWith("-gcm@openssh.com");
+  }
+
   public String getFingerPrint(){
     HASH hash=null;
     try{
@@ -162,6 +174,96 @@ public abstract class KeyExchange{
     catch(Exception e){ System.err.println("getFingerPrint: "+e); }
     return Util.getFingerPrint(hash, getHostKey());
   }
+  /*
+   * Verifies the server's signature of the exchange hash H, using the host
+   * key K_S whose algorithm name ends at index.  This is shared by the key
+   * exchange methods that do not need anything more than what DHG1, DHG14,
+   * and DHGEX do.
+   */
+  protected boolean verify(String alg, byte[] K_S, int index,
+                           byte[] sig_of_H) throws Exception{
+    int i,j;
+
+    i=index;
+    boolean result=false;
+
+    if(alg.equals("ssh-rsa")){
+      byte[] tmp;
+      byte[] ee;
+      byte[] n;
+
+      key_type=RSA;
+
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      ee=tmp;
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      n=tmp;
+
+      Class c=Class.forName(session.getConfig("signature.rsa"));
+      SignatureRSA sig=(SignatureRSA)(c.getDeclaredConstructor().newInstance());
+      sig.init();
+      sig.setPubKey(ee, n);
+      sig.update(H);
+      result=sig.verify(sig_of_H);
+
+      if(JSch.getLogger().isEnabled(Logger.INFO)){
+        JSch.getLogger().log(Logger.INFO, 
+                             "ssh_rsa_verify: signature "+result);
+      }
+    }
+    else if(alg.equals("ssh-dss")){
+      byte[] q=null;
+      byte[] tmp;
+      byte[] p;
+      byte[] g;
+      byte[] f;
+
+      key_type=DSS;
+
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      p=tmp;
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      q=tmp;
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      g=tmp;
+      j=((K_S[i++]<<24)&0xff000000)|((K_S[i++]<<16)&0x00ff0000)|
+        ((K_S[i++]<<8)&0x0000ff00)|((K_S[i++])&0x000000ff);
+      tmp=new byte[j]; System.arraycopy(K_S, i, tmp, 0, j); i+=j;
+      f=tmp;
+
+      Class c=Class.forName(session.getConfig("signature.dss"));
+      SignatureDSA sig=(SignatureDSA)(c.getDeclaredConstructor().newInstance());
+      sig.init();
+      sig.setPubKey(f, p, q, g);
+      sig.update(H);
+      result=sig.verify(sig_of_H);
+
+      if(JSch.getLogger().isEnabled(Logger.INFO)){
+        JSch.getLogger().log(Logger.INFO, 
+                             "ssh_dss_verify: signature "+result);
+      }
+    }
+    else{
+      System.err.println("unknown alg");
+    }
+
+    return result;
+  }
+
+  protected static final int RSA=0;
+  protected static final int DSS=1;
+  protected int key_type=RSA;
+
   byte[] getK(){ return K; }
   byte[] getH(){ return H; }
   HASH getHash(){ return sha; }
@@ -48,6 +48,21 @@ class KnownHosts implements HostKeyRepository{
 
   private MAC hmacsha1=null;
 
+  /*
+   * Lookups use an index of pool, which is rebuilt whenever pool has been
+   * modified.  Unhashed entries are indexed by each of their host names.
+   * Hashed entries are grouped by salt, so the HMAC of a host name is
+   * computed only once per distinct salt, and the hashed entries that match
+   * each host name are cached.  Those matches are also shared with other
+   * KnownHosts instances in the same JVM that have loaded the same, unmodified
+   * known_hosts file.  The index and caches store positions in pool.
+   */
+  private java.util.Hashtable names=null;    // host name -> int[]
+  private java.util.Vector salts=null;       // SaltGroup
+  private java.util.Hashtable matches=null;  // host -> int[] (hashed entries)
+  private java.util.Hashtable file_matches=null;
+  private static java.util.Hashtable file_caches=new java.util.Hashtable();
+
   KnownHosts(JSch jsch){
     super();
     this.jsch=jsch;
@@ -57,8 +72,11 @@ class KnownHosts implements HostKeyRepository{
   void setKnownHosts(String filename) throws JSchException{
     try{
       known_hosts = filename;
-      FileInputStream fis=new FileInputStream(Util.checkTilde(filename));
+      File file=new File(Util.checkTilde(filename));
+      String stamp=file.lastModified()+":"+file.length();
+      FileInputStream fis=new FileInputStream(file);
       setKnownHosts(fis);
+      setFileCache(file.getAbsolutePath(), stamp);
     }
     catch(FileNotFoundException e){
       throw new JSchException(e.toString(), (Throwable)e);
@@ -66,6 +84,7 @@ class KnownHosts implements HostKeyRepository{
   }
   void setKnownHosts(InputStream input) throws JSchException{
     pool.removeAllElements();
+    invalidateIndex();
     StringBuffer sb=new StringBuffer();
     byte i;
     int j;
@@ -77,11 +96,17 @@ class KnownHosts implements HostKeyRepository{
       int type;
       byte[] buf=new byte[1024];
       int bufl=0;
+      byte[] ibuf=new byte[8192];
+      int ipos=0, ilen=0;
 loop:
       while(true){
 	bufl=0;
         while(true){
-          j=fis.read();
+          if(ipos>=ilen){
+            ilen=fis.read(ibuf, 0, ibuf.length);
+            ipos=0;
+          }
+          j=(ilen<=0 ? -1 : ibuf[ipos++]&0xff);
           if(j==-1){
             if(bufl==0){ break loop; }
             else{ break; }
@@ -247,6 +272,160 @@ loop:
     HostKey hk = new HostKey(line, HostKey.UNKNOWN, null);
     pool.addElement(hk);
   }
+
+  private void setFileCache(String path, String stamp){
+    synchronized(file_caches){
+      Object[] foo=(Object[])file_caches.get(path);
+      if(foo==null || !foo[0].equals(stamp)){
+        foo=new Object[]{stamp, new java.util.Hashtable()};
+        file_caches.put(path, foo);
+      }
+      synchronized(pool){
+        file_matches=(java.util.Hashtable)foo[1];
+      }
+    }
+  }
+
+  // Must be called whenever pool or any of its entries is modified.
+  private void invalidateIndex(){
+    names=null;
+    salts=null;
+    matches=null;
+    file_matches=null;
+  }
+
+  private void buildIndex(){
+    java.util.Hashtable _names=new java.util.Hashtable();
+    java.util.Hashtable _salts=new java.util.Hashtable();
+    salts=new java.util.Vector();
+    for(int i=0; i<pool.size(); i++){
+      HostKey hk=(HostKey)pool.elementAt(i);
+      if(hk instanceof HashedHostKey && ((HashedHostKey)hk).isHashed()){
+        HashedHostKey hhk=(HashedHostKey)hk;
+        String salt=hhk.host.substring(0, hhk.host.lastIndexOf('|'));
+        SaltGroup group=(SaltGroup)_salts.get(salt);
+        if(group==null){
+          group=new SaltGroup(hhk.salt);
+          _salts.put(salt, group);
+          salts.addElement(group);
+        }
+        group.add(i);
+        continue;
+      }
+      String hosts=hk.host;
+      int j=0;
+      while(true){
+        int k=hosts.indexOf(',', j);
+        String name=(k==-1 ? hosts.substring(j) : hosts.substring(j, k));
+        name=name.toLowerCase(java.util.Locale.ENGLISH);
+        int[] foo=(int[])_names.get(name);
+        if(foo==null){
+          _names.put(name, new int[]{i});
+        }
+        else if(foo[foo.length-1]!=i){
+          int[] bar=new int[foo.length+1];
+          System.arraycopy(foo, 0, bar, 0, foo.length);
+          bar[foo.length]=i;
+          _names.put(name, bar);
+        }
+        if(k==-1) break;
+        j=k+1;
+      }
+    }
+    names=_names;
+    matches=new java.util.Hashtable();
+  }
+
+  /*
+   * Returns the positions, in ascending order, of the entries in pool that
+   * match host.  This is equivalent to testing each entry with isMatched().
+   * pool must be locked.
+   */
+  private int[] find(String host){
+    if(names==null){
+      buildIndex();
+    }
+    int[] foo=(int[])names.get(host.toLowerCase(java.util.Locale.ENGLISH));
+    int[] bar=(int[])matches.get(host);
+    if(bar==null && file_matches!=null){
+      bar=(int[])file_matches.get(host);
+    }
+    if(bar==null){
+      bar=findHashed(host);
+      matches.put(host, bar);
+      if(file_matches!=null){
+        file_matches.put(host, bar);
+      }
+    }
+    if(foo==null) return bar;
+    if(bar.length==0) return foo;
+    int[] result=new int[foo.length+bar.length];
+    for(int i=0, j=0, k=0; k<result.length; k++){
+      if(j>=bar.length || (i<foo.length && foo[i]<bar[j])) result[k]=foo[i++];
+      else result[k]=bar[j++];
+    }
+    return result;
+  }
+
+  private int[] findHashed(String host){
+    if(salts.size()==0){
+      return new int[0];
+    }
+    MAC macsha1=getHMACSHA1();
+    byte[] foo=Util.str2byte(host);
+    byte[] hash=new byte[macsha1.getBlockSize()];
+    int[] result=new int[0];
+    int n=0;
+    synchronized(macsha1){
+      for(int i=0; i<salts.size(); i++){
+        SaltGroup group=(SaltGroup)salts.elementAt(i);
+        try{
+          macsha1.init(group.salt);
+          macsha1.update(foo, 0, foo.length);
+          macsha1.doFinal(hash, 0);
+        }
+        catch(Exception e){
+          System.out.println(e);
+          continue;
+        }
+        for(int j=0; j<group.count; j++){
+          HashedHostKey hhk=(HashedHostKey)pool.elementAt(group.index[j]);
+          if(!Util.array_equals(hhk.hash, hash)) continue;
+          if(n==result.length){
+            int[] bar=new int[n*2+1];
+            System.arraycopy(result, 0, bar, 0, n);
+            result=bar;
+          }
+          result[n++]=group.index[j];
+        }
+      }
+    }
+    if(n!=result.length){
+      int[] bar=new int[n];
+      System.arraycopy(result, 0, bar, 0, n);
+      result=bar;
+    }
+    java.util.Arrays.sort(result);
+    return result;
+  }
+
+  private static class SaltGroup{
+    byte[] salt;
+    int[] index=new int[1];
+    int count=0;
+    SaltGroup(byte[] salt){
+      this.salt=salt;
+    }
+    void add(int i){
+      if(count==index.length){
+        int[] foo=new int[count*2];
+        System.arraycopy(index, 0, foo, 0, count);
+        index=foo;
+      }
+      index[count++]=i;
+    }
+  }
+
   String getKnownHostsFile(){ return known_hosts; }
   public String getKnownHostsRepositoryID(){ return known_hosts; }
 
@@ -260,9 +439,10 @@ loop:
     HostKey hk;
 
     synchronized(pool){
-      for(int i=0; i<pool.size(); i++){
-        hk=(HostKey)(pool.elementAt(i));
-        if(hk.isMatched(host) && hk.type==type){
+      int[] foo=find(host);
+      for(int i=0; i<foo.length; i++){
+        hk=(HostKey)(pool.elementAt(foo[i]));
+        if(hk.type==type){
           if(Util.array_equals(hk.key, key)){
             return OK;
           }
@@ -288,30 +468,13 @@ loop:
     String host=hostkey.getHost();
     byte[] key=hostkey.key;
 
-    HostKey hk=null;
+    HostKey hk=hostkey;
+
     synchronized(pool){
-      for(int i=0; i<pool.size(); i++){
-        hk=(HostKey)(pool.elementAt(i));
-        if(hk.isMatched(host) && hk.type==type){
-/*
-	  if(Util.array_equals(hk.key, key)){ return; }
-	  if(hk.host.equals(host)){
-	    hk.key=key;
-	    return;
-	  }
-	  else{
-	    hk.host=deleteSubString(hk.host, host);
-	    break;
-	  }
-*/
-        }
-      }
+      pool.addElement(hk);
+      invalidateIndex();
     }
 
-    hk=hostkey;
-
-    pool.addElement(hk);
-
     String bar=getKnownHostsRepositoryID();
     if(bar!=null){
       boolean foo=true;
@@ -355,12 +518,12 @@ loop:
   public HostKey[] getHostKey(String host, String type){
     synchronized(pool){
       java.util.ArrayList v = new java.util.ArrayList();
-      for(int i=0; i<pool.size(); i++){
-	HostKey hk=(HostKey)pool.elementAt(i);
+      int[] index=(host==null ? null : find(host));
+      int n=(host==null ? pool.size() : index.length);
+      for(int i=0; i<n; i++){
+	HostKey hk=(HostKey)pool.elementAt(host==null ? i : index[i]);
 	if(hk.type==HostKey.UNKNOWN) continue;
-	if(host==null || 
-	   (hk.isMatched(host) && 
-	    (type==null || hk.getType().equals(type)))){
+	if(host==null || type==null || hk.getType().equals(type)){
           v.add(hk);
 	}
       }
@@ -405,6 +568,9 @@ loop:
 	sync=true;
       }
     }
+    if(sync){
+      invalidateIndex();
+    }
     }
     if(sync){
       try{sync();}catch(Exception e){};
@@ -34,6 +34,18 @@ public class Packet{
   private static Random random=null;
   static void setRandom(Random foo){ random=foo;}
 
+  // Padding is taken from a per-thread pool of random bytes, which is
+  // refilled in large blocks, so random is not locked for every packet.
+  private static final int PAD_POOL_SIZE=4096;
+  private static final ThreadLocal pad_pool=new ThreadLocal(){
+    protected Object initialValue(){ return new PadPool(); }
+  };
+
+  private static class PadPool{
+    byte[] buf=new byte[PAD_POOL_SIZE];
+    int index=PAD_POOL_SIZE;
+  }
+
   Buffer buffer;
   byte[] ba4=new byte[4]; 
   public Packet(Buffer buffer){
@@ -43,8 +55,13 @@ public class Packet{
     buffer.index=5;
   }
   void padding(int bsize){
+    padding(bsize, false);
+  }
+  // With an AEADCipher, the packet length field is not part of the
+  // encrypted data, so it is not included in the padded length.
+  void padding(int bsize, boolean aead){
     int len=buffer.index;
-    int pad=(-len)&(bsize-1);
+    int pad=(-(aead ? len-4 : len))&(bsize-1);
     if(pad<bsize){
       pad+=bsize;
     }
@@ -55,9 +72,15 @@ public class Packet{
     ba4[3]=(byte)(len);
     System.arraycopy(ba4, 0, buffer.buffer, 0, 4);
     buffer.buffer[4]=(byte)pad;
-    synchronized(random){
-      random.fill(buffer.buffer, buffer.index, pad);
+    PadPool pool=(PadPool)pad_pool.get();
+    if(pool.index+pad>pool.buf.length){
+      synchronized(random){
+        random.fill(pool.buf, 0, pool.buf.length);
+      }
+      pool.index=0;
     }
+    System.arraycopy(pool.buf, pool.index, buffer.buffer, buffer.index, pad);
+    pool.index+=pad;
     buffer.skip(pad);
     //buffer.putPad(pad);
 /*
@@ -69,8 +92,11 @@ System.err.println("");
   }
 
   int shift(int len, int bsize, int mac){
+    return shift(len, bsize, mac, false);
+  }
+  int shift(int len, int bsize, int mac, boolean aead){
     int s=len+5+9;
-    int pad=(-s)&(bsize-1);
+    int pad=(-(aead ? s-4 : s))&(bsize-1);
     if(pad<bsize)pad+=bsize;
     s+=pad;
     s+=mac;
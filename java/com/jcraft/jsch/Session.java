@@ -92,6 +92,8 @@ public class Session implements Runnable{
   private Cipher c2scipher;
   private MAC s2cmac;
   private MAC c2smac;
+  private AEADCipher s2caead;
+  private AEADCipher c2saead;
   //private byte[] mac_buf;
   private byte[] s2cmac_result1;
   private byte[] s2cmac_result2;
@@ -110,6 +112,20 @@ public class Session implements Runnable{
   private Thread connectThread=null;
   private Object lock=new Object();
 
+  // Write queue (see _write())
+  private Object wlock=new Object();
+  private byte[][] wq=new byte[8][];
+  private int[] wq_len=new int[8];
+  private byte[][] wq_spare=new byte[8][];
+  private int[] wq_spare_len=new int[8];
+  private int wq_count=0;
+  private long wq_queued=0;
+  private long wq_written=0;
+  private long wq_writes=0;
+  private boolean wq_writing=false;
+  private Exception wq_error=null;
+  private byte[] wbuf=new byte[1024*10*2];
+
   boolean x11_forwarding=false;
   boolean agent_forwarding=false;
 
@@ -135,6 +151,12 @@ public class Session implements Runnable{
   private String hostKeyAlias=null;
   private int serverAliveInterval=0;
   private int serverAliveCountMax=1;
+  private volatile long rtt=0;    // round-trip time (ns)
+  // Receive buffers are the same size as those allocated by new Buffer().
+  BufferPool pool=new BufferPool(1024*10*2, 32);
+  private long connect_time=0;    // setup phase times (ns)
+  private long kex_time=0;
+  private long auth_time=0;
 
   private IdentityRepository identityRepository = null;
   private HostKeyRepository hostkeyRepository = null;
@@ -143,8 +165,22 @@ public class Session implements Runnable{
 
   private long kex_start_time=0L;
 
+  // Key re-exchange (see queueDuringKex())
+  static final int DEFAULT_KEX_QUEUE_SIZE=0x100000;
+  private java.util.Vector kex_queue=new java.util.Vector();
+  private volatile int kex_queued=0;      // bytes
+  private int kex_queue_limit=0;
+  private long kex_begin=0;               // ns
+  private long kex_stalled_bytes=0;       // guarded by kex_queue
+  // The rekey statistics are read by other threads.
+  private volatile int rekey_count=0;
+  private volatile long rekey_time=0;     // ns
+  private volatile long rekey_stalled_bytes=0;
+
   int max_auth_tries = 6;
   int auth_failures = 0;
+  private String auth_method=null;  // method and identity that succeeded
+  String auth_identity=null;
 
   String host="127.0.0.1";
   String org_host="127.0.0.1";
@@ -206,6 +242,7 @@ public class Session implements Runnable{
                            "Connecting to "+host+" port "+port);
     }
 
+    long phase_start=System.nanoTime();
     try	{
       int i, j;
 
@@ -298,6 +335,9 @@ public class Session implements Runnable{
       V_S=new byte[i]; System.arraycopy(buf.buffer, 0, V_S, 0, i);
       //System.err.println("V_S: ("+i+") ["+new String(V_S)+"]");
 
+      connect_time=System.nanoTime()-phase_start;
+      phase_start=System.nanoTime();
+
       if(JSch.getLogger().isEnabled(Logger.INFO)){
         JSch.getLogger().log(Logger.INFO, 
                              "Remote version string: "+Util.byte2str(V_S));
@@ -340,11 +380,14 @@ public class Session implements Runnable{
 	}
       }
 
+      // Don't count the time that the user spends accepting the host key.
+      long check_start=System.nanoTime();
       try{ checkHost(host, port, kex); }
       catch(JSchException ee){
         in_kex=false;
         throw ee;
       }
+      phase_start+=System.nanoTime()-check_start;
 
       send_newkeys();
 
@@ -365,6 +408,9 @@ public class Session implements Runnable{
 	throw new JSchException("invalid protocol(newkyes): "+buf.getCommand());
       }
 
+      kex_time=System.nanoTime()-phase_start;
+      phase_start=System.nanoTime();
+
       try{
         String s = getConfig("MaxAuthTries");
         if(s!=null){
@@ -388,6 +434,9 @@ public class Session implements Runnable{
       }
 
       auth=ua.start(this);
+      if(auth){
+        auth_method="none";
+      }
 
       String cmethods=getConfig("PreferredAuthentications");
 
@@ -462,6 +511,9 @@ public class Session implements Runnable{
             auth_cancel=false;
 	    try{ 
 	      auth=ua.start(this); 
+              if(auth){
+                auth_method=method;
+              }
               if(auth && 
                  JSch.getLogger().isEnabled(Logger.INFO)){
                 JSch.getLogger().log(Logger.INFO, 
@@ -518,6 +570,7 @@ public class Session implements Runnable{
       }
 
       isAuthed=true;
+      auth_time=System.nanoTime()-phase_start;
 
       synchronized(lock){
         if(isConnected){
@@ -634,6 +687,7 @@ public class Session implements Runnable{
 
     in_kex=true;
     kex_start_time=System.currentTimeMillis();
+    kex_begin=System.nanoTime();
 
     // byte      SSH_MSG_KEXINIT(20)
     // byte[16]  cookie (random bytes)
@@ -872,13 +926,9 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
                                              5, compress_len);
       packet.buffer.index=compress_len[0];
     }
-    if(c2scipher!=null){
+    if(c2scipher!=null || c2saead!=null){
       //packet.padding(c2scipher.getIVSize());
-      packet.padding(c2scipher_size);
-      int pad=packet.buffer.buffer[4];
-      synchronized(random){
-	random.fill(packet.buffer.buffer, packet.buffer.index-pad, pad);
-      }
+      packet.padding(c2scipher_size, c2saead!=null);
     }
     else{
       packet.padding(8);
@@ -889,7 +939,11 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
       c2smac.update(packet.buffer.buffer, 0, packet.buffer.index);
       c2smac.doFinal(packet.buffer.buffer, packet.buffer.index);
     }
-    if(c2scipher!=null){
+    if(c2saead!=null){
+      c2saead.encrypt(seqo, packet.buffer.buffer, packet.buffer.index);
+      packet.buffer.skip(c2saead.getTagSize());
+    }
+    else if(c2scipher!=null){
       byte[] buf=packet.buffer.buffer;
       c2scipher.update(buf, 0, packet.buffer.index, buf, 0);
     }
@@ -903,61 +957,98 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
 
   private int s2ccipher_size=8;
   private int c2scipher_size=8;
+
+  /*
+   * With an AEADCipher, the packet length is read and checked first, and the
+   * rest of the packet is decrypted only after the whole packet, including
+   * the authentication tag, has been received and verified.
+   */
+  private int read_aead(Buffer buf) throws Exception{
+    buf.reset();
+    io.getByte(buf.buffer, 0, 4);
+    int j=s2caead.getPacketLength(seqi, buf.buffer, 0);
+    // RFC 4253 6.1. Maximum Packet Length
+    if(j<5 || j>PACKET_MAX_SIZE || (j%s2ccipher_size)!=0){
+      throw new JSchException("Packet corrupt");
+    }
+    int need=j+s2caead.getTagSize();
+    if(4+need>buf.buffer.length){
+      byte[] foo=pool.get(4+need);
+      System.arraycopy(buf.buffer, 0, foo, 0, 4);
+      pool.put(buf.buffer);
+      buf.buffer=foo;
+    }
+    io.getByte(buf.buffer, 4, need);
+    try{
+      s2caead.decrypt(seqi, buf.buffer, 4+j);
+    }
+    catch(Exception e){
+      throw new IOException("MAC Error");
+    }
+    buf.index=4+j;
+    return j;
+  }
   public Buffer read(Buffer buf) throws Exception{
     int j=0;
     while(true){
-      buf.reset();
-      io.getByte(buf.buffer, buf.index, s2ccipher_size); 
-      buf.index+=s2ccipher_size;
-      if(s2ccipher!=null){
-        s2ccipher.update(buf.buffer, 0, s2ccipher_size, buf.buffer, 0);
-      }
-      j=((buf.buffer[0]<<24)&0xff000000)|
-        ((buf.buffer[1]<<16)&0x00ff0000)|
-        ((buf.buffer[2]<< 8)&0x0000ff00)|
-        ((buf.buffer[3]    )&0x000000ff);
-      // RFC 4253 6.1. Maximum Packet Length
-      if(j<5 || j>PACKET_MAX_SIZE){
-        start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE);
-      }
-      int need = j+4-s2ccipher_size;
-      //if(need<0){
-      //  throw new IOException("invalid data");
-      //}
-      if((buf.index+need)>buf.buffer.length){
-        byte[] foo=new byte[buf.index+need];
-        System.arraycopy(buf.buffer, 0, foo, 0, buf.index);
-        buf.buffer=foo;
-      }
-
-      if((need%s2ccipher_size)!=0){
-        String message="Bad packet length "+need;
-        if(JSch.getLogger().isEnabled(Logger.FATAL)){
-          JSch.getLogger().log(Logger.FATAL, message); 
-        }
-        start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE-s2ccipher_size);
+      if(s2caead!=null){
+        j=read_aead(buf);
       }
+      else{
+        buf.reset();
+        io.getByte(buf.buffer, buf.index, s2ccipher_size); 
+        buf.index+=s2ccipher_size;
+        if(s2ccipher!=null){
+          s2ccipher.update(buf.buffer, 0, s2ccipher_size, buf.buffer, 0);
+        }
+        j=((buf.buffer[0]<<24)&0xff000000)|
+          ((buf.buffer[1]<<16)&0x00ff0000)|
+          ((buf.buffer[2]<< 8)&0x0000ff00)|
+          ((buf.buffer[3]    )&0x000000ff);
+        // RFC 4253 6.1. Maximum Packet Length
+        if(j<5 || j>PACKET_MAX_SIZE){
+          start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE);
+        }
+        int need = j+4-s2ccipher_size;
+        //if(need<0){
+        //  throw new IOException("invalid data");
+        //}
+        if((buf.index+need)>buf.buffer.length){
+          byte[] foo=pool.get(buf.index+need);
+          System.arraycopy(buf.buffer, 0, foo, 0, buf.index);
+          pool.put(buf.buffer);
+          buf.buffer=foo;
+        }
 
-      if(need>0){
-	io.getByte(buf.buffer, buf.index, need); buf.index+=(need);
-	if(s2ccipher!=null){
-	  s2ccipher.update(buf.buffer, s2ccipher_size, need, buf.buffer, s2ccipher_size);
-	}
-      }
+        if((need%s2ccipher_size)!=0){
+          String message="Bad packet length "+need;
+          if(JSch.getLogger().isEnabled(Logger.FATAL)){
+            JSch.getLogger().log(Logger.FATAL, message); 
+          }
+          start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE-s2ccipher_size);
+        }
 
-      if(s2cmac!=null){
-	s2cmac.update(seqi);
-	s2cmac.update(buf.buffer, 0, buf.index);
+        if(need>0){
+          io.getByte(buf.buffer, buf.index, need); buf.index+=(need);
+          if(s2ccipher!=null){
+            s2ccipher.update(buf.buffer, s2ccipher_size, need, buf.buffer, s2ccipher_size);
+          }
+        }
 
-        s2cmac.doFinal(s2cmac_result1, 0);
-	io.getByte(s2cmac_result2, 0, s2cmac_result2.length);
-        if(!java.util.Arrays.equals(s2cmac_result1, s2cmac_result2)){
-          if(need > PACKET_MAX_SIZE){
-            throw new IOException("MAC Error");
+        if(s2cmac!=null){
+          s2cmac.update(seqi);
+          s2cmac.update(buf.buffer, 0, buf.index);
+
+          s2cmac.doFinal(s2cmac_result1, 0);
+          io.getByte(s2cmac_result2, 0, s2cmac_result2.length);
+          if(!java.util.Arrays.equals(s2cmac_result1, s2cmac_result2)){
+            if(need > PACKET_MAX_SIZE){
+              throw new IOException("MAC Error");
+            }
+            start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE-need);
+            continue;
           }
-          start_discard(buf, s2ccipher, s2cmac, j, PACKET_MAX_SIZE-need);
-          continue;
-	}
+        }
       }
 
       seqi++;
@@ -1080,7 +1171,24 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
 
   private void receive_newkeys(Buffer buf, KeyExchange kex) throws Exception {
     updateKeys(kex);
-    in_kex=false;
+    long stalled;
+    synchronized(kex_queue){
+      in_kex=false;
+      stalled=kex_stalled_bytes;
+      kex_stalled_bytes=0;
+    }
+    if(isAuthed){
+      long time=System.nanoTime()-kex_begin;
+      rekey_count++;
+      rekey_time+=time;
+      if(JSch.getLogger().isEnabled(Logger.INFO)){
+        JSch.getLogger().log(Logger.INFO,
+                             "Key re-exchange took "+(time/1000000)+" ms, "+
+                             stalled+" bytes of channel data "+
+                             "queued");
+      }
+      rekey_stalled_bytes+=stalled;
+    }
   }
   private void updateKeys(KeyExchange kex) throws Exception{
     byte[] K=kex.getK();
@@ -1137,54 +1245,78 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
   
       method=guess[KeyExchange.PROPOSAL_ENC_ALGS_STOC];
       c=Class.forName(getConfig(method));
-      s2ccipher=(Cipher)(c.getDeclaredConstructor().newInstance());
-      while(s2ccipher.getBlockSize()>Es2c.length){
-        buf.reset();
-        buf.putMPInt(K);
-        buf.putByte(H);
-        buf.putByte(Es2c);
-        hash.update(buf.buffer, 0, buf.index);
-        byte[] foo=hash.digest();
-        byte[] bar=new byte[Es2c.length+foo.length];
-	System.arraycopy(Es2c, 0, bar, 0, Es2c.length);
-	System.arraycopy(foo, 0, bar, Es2c.length, foo.length);
-	Es2c=bar;
-      }
-      s2ccipher.init(Cipher.DECRYPT_MODE, Es2c, IVs2c);
-      s2ccipher_size=s2ccipher.getIVSize();
-
-      method=guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC];
-      c=Class.forName(getConfig(method));
-      s2cmac=(MAC)(c.getDeclaredConstructor().newInstance());
-      MACs2c = expandKey(buf, K, H, MACs2c, hash, s2cmac.getBlockSize());
-      s2cmac.init(MACs2c);
-      //mac_buf=new byte[s2cmac.getBlockSize()];
-      s2cmac_result1=new byte[s2cmac.getBlockSize()];
-      s2cmac_result2=new byte[s2cmac.getBlockSize()];
+      Object s2cc=c.getDeclaredConstructor().newInstance();
+      if(s2cc instanceof AEADCipher){
+        s2ccipher=null;
+        s2caead=(AEADCipher)s2cc;
+        Es2c=expandKey(buf, K, H, Es2c, hash, s2caead.getBlockSize());
+        s2caead.init(Cipher.DECRYPT_MODE, Es2c, IVs2c);
+        s2ccipher_size=s2caead.getIVSize();
+        s2cmac=null;
+      }
+      else{
+        s2caead=null;
+        s2ccipher=(Cipher)s2cc;
+        while(s2ccipher.getBlockSize()>Es2c.length){
+          buf.reset();
+          buf.putMPInt(K);
+          buf.putByte(H);
+          buf.putByte(Es2c);
+          hash.update(buf.buffer, 0, buf.index);
+          byte[] foo=hash.digest();
+          byte[] bar=new byte[Es2c.length+foo.length];
+          System.arraycopy(Es2c, 0, bar, 0, Es2c.length);
+          System.arraycopy(foo, 0, bar, Es2c.length, foo.length);
+          Es2c=bar;
+        }
+        s2ccipher.init(Cipher.DECRYPT_MODE, Es2c, IVs2c);
+        s2ccipher_size=s2ccipher.getIVSize();
+
+        method=guess[KeyExchange.PROPOSAL_MAC_ALGS_STOC];
+        c=Class.forName(getConfig(method));
+        s2cmac=(MAC)(c.getDeclaredConstructor().newInstance());
+        MACs2c = expandKey(buf, K, H, MACs2c, hash, s2cmac.getBlockSize());
+        s2cmac.init(MACs2c);
+        //mac_buf=new byte[s2cmac.getBlockSize()];
+        s2cmac_result1=new byte[s2cmac.getBlockSize()];
+        s2cmac_result2=new byte[s2cmac.getBlockSize()];
+      }
 
       method=guess[KeyExchange.PROPOSAL_ENC_ALGS_CTOS];
       c=Class.forName(getConfig(method));
-      c2scipher=(Cipher)(c.getDeclaredConstructor().newInstance());
-      while(c2scipher.getBlockSize()>Ec2s.length){
-        buf.reset();
-        buf.putMPInt(K);
-        buf.putByte(H);
-        buf.putByte(Ec2s);
-        hash.update(buf.buffer, 0, buf.index);
-        byte[] foo=hash.digest();
-        byte[] bar=new byte[Ec2s.length+foo.length];
-	System.arraycopy(Ec2s, 0, bar, 0, Ec2s.length);
-	System.arraycopy(foo, 0, bar, Ec2s.length, foo.length);
-	Ec2s=bar;
-      }
-      c2scipher.init(Cipher.ENCRYPT_MODE, Ec2s, IVc2s);
-      c2scipher_size=c2scipher.getIVSize();
-
-      method=guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS];
-      c=Class.forName(getConfig(method));
-      c2smac=(MAC)(c.getDeclaredConstructor().newInstance());
-      MACc2s = expandKey(buf, K, H, MACc2s, hash, c2smac.getBlockSize());
-      c2smac.init(MACc2s);
+      Object c2sc=c.getDeclaredConstructor().newInstance();
+      if(c2sc instanceof AEADCipher){
+        c2scipher=null;
+        c2saead=(AEADCipher)c2sc;
+        Ec2s=expandKey(buf, K, H, Ec2s, hash, c2saead.getBlockSize());
+        c2saead.init(Cipher.ENCRYPT_MODE, Ec2s, IVc2s);
+        c2scipher_size=c2saead.getIVSize();
+        c2smac=null;
+      }
+      else{
+        c2saead=null;
+        c2scipher=(Cipher)c2sc;
+        while(c2scipher.getBlockSize()>Ec2s.length){
+          buf.reset();
+          buf.putMPInt(K);
+          buf.putByte(H);
+          buf.putByte(Ec2s);
+          hash.update(buf.buffer, 0, buf.index);
+          byte[] foo=hash.digest();
+          byte[] bar=new byte[Ec2s.length+foo.length];
+          System.arraycopy(Ec2s, 0, bar, 0, Ec2s.length);
+          System.arraycopy(foo, 0, bar, Ec2s.length, foo.length);
+          Ec2s=bar;
+        }
+        c2scipher.init(Cipher.ENCRYPT_MODE, Ec2s, IVc2s);
+        c2scipher_size=c2scipher.getIVSize();
+
+        method=guess[KeyExchange.PROPOSAL_MAC_ALGS_CTOS];
+        c=Class.forName(getConfig(method));
+        c2smac=(MAC)(c.getDeclaredConstructor().newInstance());
+        MACc2s = expandKey(buf, K, H, MACc2s, hash, c2smac.getBlockSize());
+        c2smac.init(MACc2s);
+      }
 
       method=guess[KeyExchange.PROPOSAL_COMP_ALGS_CTOS];
       initDeflater(method);
@@ -1237,7 +1369,10 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
   /*public*/ /*synchronized*/ void write(Packet packet, Channel c, int length) throws Exception{
     long t = getTimeout();
     while(true){
-      if(in_kex){
+      if(in_kex || kex_queued>0){
+        if(queueDuringKex(packet, c, length)){
+          return;
+        }
         if(t>0L && (System.currentTimeMillis()-kex_start_time)>t){
           throw new JSchException("timeout in wating for rekeying process.");
         }
@@ -1281,8 +1416,11 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
           }
           if(len!=length){
             s=packet.shift((int)len, 
-                           (c2scipher!=null ? c2scipher_size : 8),
-                           (c2smac!=null ? c2smac.getBlockSize() : 0));
+                           (c2scipher!=null || c2saead!=null ?
+                            c2scipher_size : 8),
+                           (c2smac!=null ? c2smac.getBlockSize() :
+                            c2saead!=null ? c2saead.getTagSize() : 0),
+                           c2saead!=null);
           }
 	  command=packet.buffer.getCommand();
 	  recipient=c.getRecipient();
@@ -1300,7 +1438,7 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
       }
 
       synchronized(c){
-        if(in_kex){
+        if(in_kex || kex_queued>0){
           continue;
         }
         if(c.rwsize>=length){
@@ -1326,7 +1464,7 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
   public void write(Packet packet) throws Exception{
     // System.err.println("in_kex="+in_kex+" "+(packet.buffer.getCommand()));
     long t = getTimeout();
-    while(in_kex){
+    while(in_kex || kex_queued>0){
       if(t>0L && (System.currentTimeMillis()-kex_start_time)>t){
         throw new JSchException("timeout in wating for rekeying process.");
       }
@@ -1349,13 +1487,186 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
     _write(packet);
   }
 
+  /*
+   * While a key exchange is in progress, channel data are copied into a queue
+   * (up to max_kex_queue_size bytes) rather than blocking the writer, and
+   * the session thread sends the queued data as soon as the new keys are in
+   * use.  Other packets wait until the queue has been drained, so they are
+   * never sent ahead of queued channel data.  Returns false if the packet
+   * could not be queued, in which case the writer waits as before.  Only
+   * data queued before the new keys are in use count as stalled by the key
+   * exchange.
+   */
+  private boolean queueDuringKex(Packet packet, Channel c, int length) throws IOException{
+    synchronized(kex_queue){
+      if(!in_kex && kex_queue.isEmpty()){
+        return false;
+      }
+      if(c.close || !c.isConnected()){
+        throw new IOException("channel is broken");
+      }
+      int len=packet.buffer.index;
+      if(kex_queue_limit==0){
+        kex_queue_limit=DEFAULT_KEX_QUEUE_SIZE;
+        try{
+          String foo=getConfig("max_kex_queue_size");
+          if(foo!=null) kex_queue_limit=Integer.parseInt(foo);
+        }
+        catch(Exception e){
+        }
+      }
+      if(kex_queued+len>kex_queue_limit){
+        return false;
+      }
+      synchronized(c){
+        if(c.rwsize<length){
+          return false;
+        }
+        c.rwsize-=length;
+      }
+      Buffer buf=new Buffer(new byte[len+buffer_margin]);
+      System.arraycopy(packet.buffer.buffer, 0, buf.buffer, 0, len);
+      buf.index=len;
+      kex_queue.addElement(buf);
+      kex_queued+=len;
+      if(in_kex){
+        kex_stalled_bytes+=length;
+      }
+      return true;
+    }
+  }
+
+  private void flushKexQueue() throws Exception{
+    int count=0;
+    while(true){
+      Buffer buf;
+      synchronized(kex_queue){
+        if(kex_queue.isEmpty()){
+          break;
+        }
+        buf=(Buffer)kex_queue.firstElement();
+      }
+      int len=buf.index;
+      // The packet is removed from the queue only after it has been sent, so
+      // other writers continue to wait until then.
+      _write(new Packet(buf));
+      synchronized(kex_queue){
+        kex_queue.removeElementAt(0);
+        kex_queued-=len;
+      }
+      count++;
+    }
+    if(count>0 && JSch.getLogger().isEnabled(Logger.INFO)){
+      JSch.getLogger().log(Logger.INFO,
+                           "Sent "+count+" packets queued during key exchange");
+    }
+  }
+
+  /*
+   * Encoded packets are queued, and the first thread that finds no write in
+   * progress writes all of the queued packets at once.  Thus, packets that
+   * are encoded while another thread is blocked in a write (for instance,
+   * window adjustments sent by the session thread while a channel is sending
+   * data) are combined into a single write.  Each thread waits until its own
+   * packet has been written, so the packet can be reused as soon as write()
+   * returns.
+   */
   private void _write(Packet packet) throws Exception{
+    long seq;
     synchronized(lock){
       encode(packet);
-      if(io!=null){
-        io.put(packet);
-        seqo++;
+      if(io==null){
+        return;
+      }
+      seqo++;
+      synchronized(wlock){
+        if(wq_count==wq.length){
+          byte[][] foo=new byte[wq.length*2][];
+          int[] bar=new int[wq.length*2];
+          System.arraycopy(wq, 0, foo, 0, wq_count);
+          System.arraycopy(wq_len, 0, bar, 0, wq_count);
+          wq=foo;
+          wq_len=bar;
+        }
+        wq[wq_count]=packet.buffer.buffer;
+        wq_len[wq_count]=packet.buffer.index;
+        wq_count++;
+        seq=++wq_queued;
+      }
+    }
+    flush(seq);
+  }
+
+  private void flush(long seq) throws Exception{
+    byte[][] bufs;
+    int[] lens;
+    int count;
+    long queued;
+    synchronized(wlock){
+      while(wq_written<seq && wq_writing){
+        try{ wlock.wait(); }
+        catch(java.lang.InterruptedException e){}
+      }
+      if(wq_written>=seq){
+        if(wq_error!=null){
+          throw wq_error;
+        }
+        return;
+      }
+      wq_writing=true;
+      bufs=wq;
+      lens=wq_len;
+      count=wq_count;
+      queued=wq_queued;
+      wq=wq_spare;
+      wq_len=wq_spare_len;
+      wq_count=0;
+    }
+
+    Exception error=null;
+    try{
+      IO _io=io;
+      if(_io!=null){
+        if(count==1){
+          _io.put(bufs[0], 0, lens[0]);
+        }
+        else{
+          int len=0;
+          for(int i=0; i<count; i++){
+            len+=lens[i];
+          }
+          if(wbuf.length<len){
+            wbuf=new byte[Math.max(wbuf.length*2, len)];
+          }
+          len=0;
+          for(int i=0; i<count; i++){
+            System.arraycopy(bufs[i], 0, wbuf, len, lens[i]);
+            len+=lens[i];
+          }
+          _io.put(wbuf, 0, len);
+        }
+      }
+    }
+    catch(Exception e){
+      error=e;
+    }
+    for(int i=0; i<count; i++){
+      bufs[i]=null;
+    }
+
+    synchronized(wlock){
+      wq_spare=bufs;
+      wq_spare_len=lens;
+      wq_written=queued;
+      wq_writing=false;
+      wq_writes++;
+      if(error!=null && wq_error==null){
+        wq_error=error;
       }
+      wlock.notifyAll();
+    }
+    if(error!=null){
+      throw error;
     }
   }
 
@@ -1415,6 +1726,7 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
           send_newkeys();
 	  receive_newkeys(buf, kex);
 	  kex=null;
+          flushKexQueue();
 	  break;
 
 	case SSH_MSG_CHANNEL_DATA:
@@ -1433,7 +1745,15 @@ key_type+" key fingerprint is "+key_fprint+".\n"+
           }
 
 try{
-	  channel.write(foo, start[0], length[0]);
+          DataSink sink=channel.sink;
+          if(sink!=null){
+            // The sink takes ownership of the packet buffer.
+            sink.put(foo, start[0], length[0]);
+            buf.buffer=pool.get(0);
+          }
+          else{
+	    channel.write(foo, start[0], length[0]);
+          }
 }
 catch(Exception e){
 //System.err.println(e);
@@ -1441,17 +1761,16 @@ catch(Exception e){
 break;
 }
 	  int len=length[0];
-	  channel.setLocalWindowSize(channel.lwsize-len);
- 	  if(channel.lwsize<channel.lwsize_max/2){
+	  int adjust=channel.consumeLocalWindow(len);
+ 	  if(adjust>0){
             packet.reset();
 	    buf.putByte((byte)SSH_MSG_CHANNEL_WINDOW_ADJUST);
 	    buf.putInt(channel.getRecipient());
-	    buf.putInt(channel.lwsize_max-channel.lwsize);
+	    buf.putInt(adjust);
             synchronized(channel){
               if(!channel.close)
                 write(packet);
             }
-	    channel.setLocalWindowSize(channel.lwsize_max);
 	  }
 	  break;
 
@@ -1474,17 +1793,16 @@ break;
 	  channel.write_ext(foo, start[0], length[0]);
 
 	  len=length[0];
-	  channel.setLocalWindowSize(channel.lwsize-len);
- 	  if(channel.lwsize<channel.lwsize_max/2){
+	  adjust=channel.consumeLocalWindow(len);
+ 	  if(adjust>0){
             packet.reset();
 	    buf.putByte((byte)SSH_MSG_CHANNEL_WINDOW_ADJUST);
 	    buf.putInt(channel.getRecipient());
-	    buf.putInt(channel.lwsize_max-channel.lwsize);
+	    buf.putInt(adjust);
             synchronized(channel){
               if(!channel.close)
                 write(packet);
             }
-	    channel.setLocalWindowSize(channel.lwsize_max);
 	  }
 	  break;
 
@@ -1540,6 +1858,8 @@ break;
           long rws=buf.getUInt();
           int rps=buf.getInt();
           if(channel!=null){
+            if(channel.open_time!=0)
+              updateRTT(System.nanoTime()-channel.open_time);
             channel.setRemoteWindowSize(rws);
             channel.setRemotePacketSize(rps);
             channel.open_confirmation=true;
@@ -1697,6 +2017,14 @@ break;
     if(JSch.getLogger().isEnabled(Logger.INFO)){
       JSch.getLogger().log(Logger.INFO,
                            "Disconnecting from "+host+" port "+port);
+      JSch.getLogger().log(Logger.INFO,
+                           "Received "+(seqi&0xffffffffL)+" packets, "+
+                           "allocated "+pool.getAllocated()+
+                           " and reused "+pool.getReused()+
+                           " receive buffers");
+      JSch.getLogger().log(Logger.INFO,
+                           "Sent "+wq_queued+" packets in "+wq_writes+
+                           " writes");
     }
     /*
     for(int i=0; i<Channel.pool.size(); i++){
@@ -2296,6 +2624,35 @@ break;
     }
   }
 
+  /*
+   * The round-trip time is estimated from the shortest observed delay
+   * between sending a request and receiving the response to it.
+   */
+  void updateRTT(long foo){
+    if(foo>0 && (rtt==0 || foo<rtt))
+      rtt=foo;
+  }
+  long getRTT(){ return rtt; }
+
+  /**
+   * Returns the time, in nanoseconds, that {@link #connect()} spent
+   * establishing the connection and exchanging version strings.
+   */
+  public long getConnectTime(){ return connect_time; }
+
+  /**
+   * Returns the time, in nanoseconds, that {@link #connect()} spent in the
+   * initial key exchange, not including the time spent waiting for the user
+   * to accept the host key.
+   */
+  public long getKexTime(){ return kex_time; }
+
+  /**
+   * Returns the time, in nanoseconds, that {@link #connect()} spent
+   * authenticating the user, including any time spent prompting the user.
+   */
+  public long getAuthTime(){ return auth_time; }
+
   public String getConfig(String key){
     Object foo=null;
     if(config!=null){
@@ -2372,6 +2729,36 @@ break;
   
   private HostKey hostkey=null;
   public HostKey getHostKey(){ return hostkey; }
+  /**
+   * Returns the name of the authentication method that succeeded, or
+   * <code>null</code> if the session has not been authenticated.
+   */
+  public String getAuthMethod(){return auth_method;}
+
+  /**
+   * Returns the name of the identity that was used to authenticate with the
+   * <code>publickey</code> method, or <code>null</code> if another method was
+   * used.
+   */
+  public String getAuthIdentity(){return auth_identity;}
+
+  /**
+   * Returns the number of key re-exchanges that have been completed since
+   * the session was authenticated.
+   */
+  public int getRekeyCount(){return rekey_count;}
+
+  /**
+   * Returns the total time, in nanoseconds, spent in key re-exchanges.
+   */
+  public long getRekeyTime(){return rekey_time;}
+
+  /**
+   * Returns the total number of bytes of channel data that were queued
+   * because they were written during a key re-exchange.
+   */
+  public long getRekeyStalledBytes(){return rekey_stalled_bytes;}
+
   public String getHost(){return host;}
   public String getUserName(){return username;}
   public int getPort(){return port;}
@@ -2470,7 +2857,15 @@ break;
   static boolean checkCipher(String cipher){
     try{
       Class c=Class.forName(cipher);
-      Cipher _c=(Cipher)(c.getDeclaredConstructor().newInstance());
+      Object o=c.getDeclaredConstructor().newInstance();
+      if(o instanceof AEADCipher){
+        AEADCipher _c=(AEADCipher)o;
+        _c.init(Cipher.ENCRYPT_MODE,
+                new byte[_c.getBlockSize()],
+                new byte[_c.getIVSize()]);
+        return true;
+      }
+      Cipher _c=(Cipher)o;
       _c.init(Cipher.ENCRYPT_MODE,
               new byte[_c.getBlockSize()],
               new byte[_c.getIVSize()]);
@@ -43,6 +43,7 @@ class UserAuthNone extends UserAuth{
     packet.reset();
     buf.putByte((byte)Session.SSH_MSG_SERVICE_REQUEST);
     buf.putString(Util.str2byte("ssh-userauth"));
+    long start=System.nanoTime();
     session.write(packet);
 
     if(JSch.getLogger().isEnabled(Logger.INFO)){
@@ -55,6 +56,7 @@ class UserAuthNone extends UserAuth{
     // string    service name
     buf=session.read(buf);
     int command=buf.getCommand();
+    session.updateRTT(System.nanoTime()-start);
 
     boolean result=(command==SSH_MSG_SERVICE_ACCEPT);
 
@@ -199,6 +199,7 @@ class UserAuthPublicKey extends UserAuth{
           command=buf.getCommand()&0xff;
 
           if(command==SSH_MSG_USERAUTH_SUCCESS){
+            session.auth_identity=identity.getName();
             return true;
           }
           else if(command==SSH_MSG_USERAUTH_BANNER){
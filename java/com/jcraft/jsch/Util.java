@@ -36,12 +36,15 @@ import java.io.IOException;
 class Util{
 
   private static final byte[] b64 =Util.str2byte("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/=");
-  private static byte val(byte foo){
-    if(foo == '=') return 0;
-    for(int j=0; j<b64.length; j++){
-      if(foo==b64[j]) return (byte)j;
+  // Reverse lookup table for b64.  '=' and invalid characters map to 0.
+  private static final byte[] b64val=new byte[256];
+  static{
+    for(int j=0; j<b64.length-1; j++){
+      b64val[b64[j]&0xff]=(byte)j;
     }
-    return 0;
+  }
+  private static byte val(byte foo){
+    return b64val[foo&0xff];
   }
   static byte[] fromBase64(byte[] buf, int start, int length) throws JSchException {
     try {
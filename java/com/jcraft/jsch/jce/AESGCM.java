@@ -0,0 +1,102 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch.jce;
+
+import com.jcraft.jsch.AEADCipher;
+import javax.crypto.spec.*;
+
+/*
+ * aes128-gcm@openssh.com and aes256-gcm@openssh.com (RFC 5647.)  The packet
+ * length field is sent in the clear and authenticated as additional data.
+ * The 12-byte nonce consists of a 4-byte fixed field and an 8-byte invocation
+ * counter, which is incremented after each packet.
+ */
+abstract class AESGCM implements AEADCipher{
+  private static final int ivsize=16;
+  private static final int noncesize=12;
+  private static final int tagsize=16;
+  private javax.crypto.Cipher cipher;
+  private SecretKeySpec keyspec;
+  private int mode;
+  private byte[] nonce;
+  public int getIVSize(){return ivsize;} 
+  public int getTagSize(){return tagsize;}
+  public void init(int mode, byte[] key, byte[] iv) throws Exception{
+    byte[] tmp;
+    if(key.length>getBlockSize()){
+      tmp=new byte[getBlockSize()];
+      System.arraycopy(key, 0, tmp, 0, tmp.length);
+      key=tmp;
+    }
+    nonce=new byte[noncesize];
+    System.arraycopy(iv, 0, nonce, 0, Math.min(iv.length, noncesize));
+    this.mode=mode;
+
+    try{
+      keyspec=new SecretKeySpec(key, "AES");
+      cipher=javax.crypto.Cipher.getInstance("AES/GCM/NoPadding");
+      // Check that the key size is supported.  The JCE refuses to encrypt
+      // twice with the same key and nonce, so decryption mode is used here.
+      synchronized(javax.crypto.Cipher.class){
+        cipher.init(javax.crypto.Cipher.DECRYPT_MODE, keyspec,
+                    new GCMParameterSpec(tagsize*8, nonce));
+      }
+    }
+    catch(Exception e){
+      cipher=null;
+      throw e;
+    }
+  }
+  public int getPacketLength(int seq, byte[] foo, int s){
+    return ((foo[s]<<24)&0xff000000)|
+           ((foo[s+1]<<16)&0x00ff0000)|
+           ((foo[s+2]<< 8)&0x0000ff00)|
+           ((foo[s+3]    )&0x000000ff);
+  }
+  public void encrypt(int seq, byte[] buf, int len) throws Exception{
+    cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, keyspec,
+                new GCMParameterSpec(tagsize*8, nonce));
+    cipher.updateAAD(buf, 0, 4);
+    cipher.doFinal(buf, 4, len-4, buf, 4);
+    incrementNonce();
+  }
+  public void decrypt(int seq, byte[] buf, int len) throws Exception{
+    cipher.init(javax.crypto.Cipher.DECRYPT_MODE, keyspec,
+                new GCMParameterSpec(tagsize*8, nonce));
+    cipher.updateAAD(buf, 0, 4);
+    cipher.doFinal(buf, 4, len-4+tagsize, buf, 4);
+    incrementNonce();
+  }
+  private void incrementNonce(){
+    for(int i=noncesize-1; i>=4; i--){
+      if(++nonce[i]!=0) break;
+    }
+  }
+}
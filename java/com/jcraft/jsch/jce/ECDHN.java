@@ -0,0 +1,103 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch.jce;
+
+import java.math.BigInteger;
+import java.security.*;
+import java.security.interfaces.*;
+import java.security.spec.*;
+import javax.crypto.*;
+
+public class ECDHN implements com.jcraft.jsch.ECDH{
+  byte[] Q_array;
+  ECPublicKey publicKey;
+  private KeyAgreement myKeyAgree;
+
+  public void init(int size) throws Exception{
+    myKeyAgree=KeyAgreement.getInstance("ECDH");
+    KeyPairGenerator kpg=KeyPairGenerator.getInstance("EC");
+    String name=null;
+    if(size==256) name="secp256r1";
+    else if(size==384) name="secp384r1";
+    else if(size==521) name="secp521r1";
+    else throw new InvalidAlgorithmParameterException("unsupported key size "+size);
+    kpg.initialize(new ECGenParameterSpec(name));
+    KeyPair kp=kpg.genKeyPair();
+    publicKey=(ECPublicKey)kp.getPublic();
+    ECPoint w=publicKey.getW();
+    int len=(publicKey.getParams().getCurve().getField().getFieldSize()+7)/8;
+    // uncompressed point: 0x04 || X || Y
+    Q_array=new byte[1+2*len];
+    Q_array[0]=0x04;
+    toFixedLength(w.getAffineX(), Q_array, 1, len);
+    toFixedLength(w.getAffineY(), Q_array, 1+len, len);
+    myKeyAgree.init(kp.getPrivate());
+  }
+
+  public byte[] getQ() throws Exception{
+    return Q_array;
+  }
+
+  public byte[] getSecret(byte[] r, byte[] s) throws Exception{
+    KeyFactory kf=KeyFactory.getInstance("EC");
+    ECPoint w=new ECPoint(new BigInteger(1, r), new BigInteger(1, s));
+    ECPublicKeySpec spec=new ECPublicKeySpec(w, publicKey.getParams());
+    PublicKey theirPublicKey=kf.generatePublic(spec);
+    myKeyAgree.doPhase(theirPublicKey, true);
+    return myKeyAgree.generateSecret();
+  }
+
+  /*
+   * Checks that the server's public key is a point on the curve, as required
+   * by RFC 5656 (section 4) and SEC 1 (section 3.2.2.1.)  The NIST curves
+   * have a cofactor of 1, so any point on the curve other than the point at
+   * infinity, which cannot be encoded here, is in the correct subgroup.
+   */
+  public boolean validate(byte[] r, byte[] s) throws Exception{
+    BigInteger x=new BigInteger(1, r);
+    BigInteger y=new BigInteger(1, s);
+    EllipticCurve curve=publicKey.getParams().getCurve();
+    BigInteger p=((ECFieldFp)curve.getField()).getP();
+    if(x.compareTo(p)>=0 || y.compareTo(p)>=0){
+      return false;
+    }
+    // y^2 = x^3 + ax + b (mod p)
+    BigInteger lhs=y.multiply(y).mod(p);
+    BigInteger rhs=x.multiply(x).add(curve.getA()).multiply(x).add(curve.getB()).mod(p);
+    return lhs.equals(rhs);
+  }
+
+  private static void toFixedLength(BigInteger v, byte[] out, int off, int len){
+    byte[] foo=v.toByteArray();
+    // toByteArray() may add a leading sign byte or omit leading zeros.
+    int n=Math.min(foo.length, len);
+    System.arraycopy(foo, foo.length-n, out, off+len-n, n);
+  }
+}
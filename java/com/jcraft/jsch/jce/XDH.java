@@ -0,0 +1,85 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch.jce;
+
+import java.security.*;
+import java.security.spec.*;
+import javax.crypto.*;
+
+/*
+ * X25519 (RFC 7748) using the JCE, which supports it in Java 11 and later.
+ * The keys are exchanged in their X.509 encoding, which for X25519 is a
+ * fixed 12-byte prefix followed by the 32-byte u-coordinate, so that no
+ * Java 11 APIs are needed at compile time.  With earlier JREs, init() fails,
+ * and Session.checkKexes() disables curve25519-sha256.
+ */
+public class XDH implements com.jcraft.jsch.XDH{
+  private static final int keysize=32;
+  private static final byte[] x509_prefix={
+    (byte)0x30, (byte)0x2a, (byte)0x30, (byte)0x05, (byte)0x06, (byte)0x03,
+    (byte)0x2b, (byte)0x65, (byte)0x6e, (byte)0x03, (byte)0x21, (byte)0x00
+  };
+
+  byte[] Q_array;
+  private KeyAgreement myKeyAgree;
+
+  public void init() throws Exception{
+    myKeyAgree=KeyAgreement.getInstance("X25519");
+    KeyPairGenerator kpg=KeyPairGenerator.getInstance("X25519");
+    KeyPair kp=kpg.genKeyPair();
+    byte[] encoded=kp.getPublic().getEncoded();
+    if(encoded.length!=x509_prefix.length+keysize){
+      throw new InvalidKeyException("unexpected X25519 key encoding");
+    }
+    Q_array=new byte[keysize];
+    System.arraycopy(encoded, x509_prefix.length, Q_array, 0, keysize);
+    myKeyAgree.init(kp.getPrivate());
+  }
+
+  public byte[] getQ() throws Exception{
+    return Q_array;
+  }
+
+  // generateSecret() throws an exception if the result is all zeroes (that
+  // is, if the peer sent a low-order point), as RFC 8731 requires.
+  public byte[] getSecret(byte[] Q) throws Exception{
+    byte[] encoded=new byte[x509_prefix.length+keysize];
+    System.arraycopy(x509_prefix, 0, encoded, 0, x509_prefix.length);
+    System.arraycopy(Q, 0, encoded, x509_prefix.length, keysize);
+    KeyFactory kf=KeyFactory.getInstance("X25519");
+    PublicKey theirPublicKey=kf.generatePublic(new X509EncodedKeySpec(encoded));
+    myKeyAgree.doPhase(theirPublicKey, true);
+    return myKeyAgree.generateSecret();
+  }
+
+  public boolean validate(byte[] Q) throws Exception{
+    return Q.length==keysize;
+  }
+}
@@ -0,0 +1,303 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.jcraft.jsch.jcraft;
+
+import com.jcraft.jsch.AEADCipher;
+
+/*
+ * chacha20-poly1305@openssh.com (see PROTOCOL.chacha20poly1305 in the OpenSSH
+ * sources.)  The 64-byte key is split into a main key (K_2), which encrypts
+ * the packet payload, and a header key (K_1), which encrypts only the packet
+ * length field.  Both use the original ChaCha20 variant with a 64-bit block
+ * counter and a 64-bit nonce, which is the packet sequence number.  The
+ * Poly1305 key is the first 32 bytes of the main key stream (block 0), and
+ * the payload is encrypted starting with block 1.
+ *
+ * The JCE only offers the RFC 7539 construction, and only in Java 11 and
+ * later, so ChaCha20 and Poly1305 are implemented here.
+ */
+public class ChaCha20Poly1305 implements AEADCipher{
+  private static final int ivsize=8;
+  private static final int bsize=64;
+  private static final int tagsize=16;
+
+  private final int[] mainKey=new int[8];
+  private final int[] headerKey=new int[8];
+  private final int[] state=new int[16];
+  private final int[] x=new int[16];
+  private final byte[] keystream=new byte[64];
+  private final byte[] polykey=new byte[32];
+  private final byte[] tag=new byte[tagsize];
+  private final Poly1305 poly=new Poly1305();
+
+  public int getIVSize(){return ivsize;}
+  public int getBlockSize(){return bsize;}
+  public int getTagSize(){return tagsize;}
+  public void init(int mode, byte[] key, byte[] iv) throws Exception{
+    if(key.length<bsize){
+      throw new IllegalArgumentException("Invalid key length "+key.length);
+    }
+    for(int i=0; i<8; i++){
+      mainKey[i]=le32(key, i*4);
+      headerKey[i]=le32(key, 32+i*4);
+    }
+  }
+  public int getPacketLength(int seq, byte[] foo, int s){
+    setup(headerKey, seq, 0);
+    block();
+    return (((foo[s]^keystream[0])<<24)&0xff000000)|
+           (((foo[s+1]^keystream[1])<<16)&0x00ff0000)|
+           (((foo[s+2]^keystream[2])<< 8)&0x0000ff00)|
+           (((foo[s+3]^keystream[3])    )&0x000000ff);
+  }
+  public void encrypt(int seq, byte[] buf, int len) throws Exception{
+    setup(headerKey, seq, 0);
+    xor(buf, 0, 4);
+    setup(mainKey, seq, 0);
+    block();
+    System.arraycopy(keystream, 0, polykey, 0, polykey.length);
+    state[12]=1;
+    xor(buf, 4, len-4);
+    poly.init(polykey);
+    poly.update(buf, 0, len);
+    poly.doFinal(buf, len);
+  }
+  public void decrypt(int seq, byte[] buf, int len) throws Exception{
+    setup(mainKey, seq, 0);
+    block();
+    System.arraycopy(keystream, 0, polykey, 0, polykey.length);
+    poly.init(polykey);
+    poly.update(buf, 0, len);
+    poly.doFinal(tag, 0);
+    int diff=0;
+    for(int i=0; i<tagsize; i++){
+      diff|=tag[i]^buf[len+i];
+    }
+    if(diff!=0){
+      throw new javax.crypto.AEADBadTagException("MAC Error");
+    }
+    state[12]=1;
+    xor(buf, 4, len-4);
+    setup(headerKey, seq, 0);
+    xor(buf, 0, 4);
+  }
+
+  // The 64-bit nonce is the big-endian sequence number, and ChaCha20 loads it
+  // as two little-endian words.
+  private void setup(int[] key, int seq, int counter){
+    state[0]=0x61707865;
+    state[1]=0x3320646e;
+    state[2]=0x79622d32;
+    state[3]=0x6b206574;
+    System.arraycopy(key, 0, state, 4, 8);
+    state[12]=counter;
+    state[13]=0;
+    state[14]=0;
+    state[15]=Integer.reverseBytes(seq);
+  }
+
+  private void xor(byte[] buf, int s, int len){
+    while(len>0){
+      block();
+      if(++state[12]==0) state[13]++;
+      int n=len<64 ? len : 64;
+      for(int i=0; i<n; i++){
+        buf[s+i]^=keystream[i];
+      }
+      s+=n;
+      len-=n;
+    }
+  }
+
+  private void block(){
+    int x0=state[0], x1=state[1], x2=state[2], x3=state[3];
+    int x4=state[4], x5=state[5], x6=state[6], x7=state[7];
+    int x8=state[8], x9=state[9], x10=state[10], x11=state[11];
+    int x12=state[12], x13=state[13], x14=state[14], x15=state[15];
+    for(int i=0; i<10; i++){
+      // column rounds
+      x0+=x4; x12=Integer.rotateLeft(x12^x0, 16);
+      x8+=x12; x4=Integer.rotateLeft(x4^x8, 12);
+      x0+=x4; x12=Integer.rotateLeft(x12^x0, 8);
+      x8+=x12; x4=Integer.rotateLeft(x4^x8, 7);
+      x1+=x5; x13=Integer.rotateLeft(x13^x1, 16);
+      x9+=x13; x5=Integer.rotateLeft(x5^x9, 12);
+      x1+=x5; x13=Integer.rotateLeft(x13^x1, 8);
+      x9+=x13; x5=Integer.rotateLeft(x5^x9, 7);
+      x2+=x6; x14=Integer.rotateLeft(x14^x2, 16);
+      x10+=x14; x6=Integer.rotateLeft(x6^x10, 12);
+      x2+=x6; x14=Integer.rotateLeft(x14^x2, 8);
+      x10+=x14; x6=Integer.rotateLeft(x6^x10, 7);
+      x3+=x7; x15=Integer.rotateLeft(x15^x3, 16);
+      x11+=x15; x7=Integer.rotateLeft(x7^x11, 12);
+      x3+=x7; x15=Integer.rotateLeft(x15^x3, 8);
+      x11+=x15; x7=Integer.rotateLeft(x7^x11, 7);
+      // diagonal rounds
+      x0+=x5; x15=Integer.rotateLeft(x15^x0, 16);
+      x10+=x15; x5=Integer.rotateLeft(x5^x10, 12);
+      x0+=x5; x15=Integer.rotateLeft(x15^x0, 8);
+      x10+=x15; x5=Integer.rotateLeft(x5^x10, 7);
+      x1+=x6; x12=Integer.rotateLeft(x12^x1, 16);
+      x11+=x12; x6=Integer.rotateLeft(x6^x11, 12);
+      x1+=x6; x12=Integer.rotateLeft(x12^x1, 8);
+      x11+=x12; x6=Integer.rotateLeft(x6^x11, 7);
+      x2+=x7; x13=Integer.rotateLeft(x13^x2, 16);
+      x8+=x13; x7=Integer.rotateLeft(x7^x8, 12);
+      x2+=x7; x13=Integer.rotateLeft(x13^x2, 8);
+      x8+=x13; x7=Integer.rotateLeft(x7^x8, 7);
+      x3+=x4; x14=Integer.rotateLeft(x14^x3, 16);
+      x9+=x14; x4=Integer.rotateLeft(x4^x9, 12);
+      x3+=x4; x14=Integer.rotateLeft(x14^x3, 8);
+      x9+=x14; x4=Integer.rotateLeft(x4^x9, 7);
+    }
+    x[0]=x0; x[1]=x1; x[2]=x2; x[3]=x3;
+    x[4]=x4; x[5]=x5; x[6]=x6; x[7]=x7;
+    x[8]=x8; x[9]=x9; x[10]=x10; x[11]=x11;
+    x[12]=x12; x[13]=x13; x[14]=x14; x[15]=x15;
+    for(int i=0, j=0; i<16; i++, j+=4){
+      int v=x[i]+state[i];
+      keystream[j]=(byte)v;
+      keystream[j+1]=(byte)(v>>>8);
+      keystream[j+2]=(byte)(v>>>16);
+      keystream[j+3]=(byte)(v>>>24);
+    }
+  }
+
+  private static int le32(byte[] b, int i){
+    return (b[i]&0xff)|((b[i+1]&0xff)<<8)|((b[i+2]&0xff)<<16)|
+           ((b[i+3]&0xff)<<24);
+  }
+
+  /*
+   * Poly1305 (RFC 7539), using 26-bit limbs as in poly1305-donna.  This is
+   * public so that it can be checked against the RFC 7539 test vectors.
+   */
+  public static class Poly1305{
+    private int r0, r1, r2, r3, r4;
+    private int s1, s2, s3, s4;
+    private int h0, h1, h2, h3, h4;
+    private int pad0, pad1, pad2, pad3;
+    private final byte[] last=new byte[16];
+
+    public void init(byte[] key){
+      r0=(le32(key, 0)    )&0x3ffffff;
+      r1=(le32(key, 3)>>>2)&0x3ffff03;
+      r2=(le32(key, 6)>>>4)&0x3ffc0ff;
+      r3=(le32(key, 9)>>>6)&0x3f03fff;
+      r4=(le32(key, 12)>>>8)&0x00fffff;
+      s1=r1*5; s2=r2*5; s3=r3*5; s4=r4*5;
+      h0=h1=h2=h3=h4=0;
+      pad0=le32(key, 16);
+      pad1=le32(key, 20);
+      pad2=le32(key, 24);
+      pad3=le32(key, 28);
+    }
+
+    // A partial block is padded and processed immediately, so only the last
+    // call to update() before doFinal() may pass a length that is not a
+    // multiple of 16.
+    public void update(byte[] m, int s, int len){
+      while(len>=16){
+        block(m, s, 1<<24);
+        s+=16;
+        len-=16;
+      }
+      if(len>0){
+        System.arraycopy(m, s, last, 0, len);
+        last[len]=1;
+        for(int i=len+1; i<16; i++) last[i]=0;
+        block(last, 0, 0);
+      }
+    }
+
+    private void block(byte[] m, int s, int hibit){
+      h0+=(le32(m, s)    )&0x3ffffff;
+      h1+=(le32(m, s+3)>>>2)&0x3ffffff;
+      h2+=(le32(m, s+6)>>>4)&0x3ffffff;
+      h3+=(le32(m, s+9)>>>6)&0x3ffffff;
+      h4+=(le32(m, s+12)>>>8)|hibit;
+
+      long d0=(long)h0*r0+(long)h1*s4+(long)h2*s3+(long)h3*s2+(long)h4*s1;
+      long d1=(long)h0*r1+(long)h1*r0+(long)h2*s4+(long)h3*s3+(long)h4*s2;
+      long d2=(long)h0*r2+(long)h1*r1+(long)h2*r0+(long)h3*s4+(long)h4*s3;
+      long d3=(long)h0*r3+(long)h1*r2+(long)h2*r1+(long)h3*r0+(long)h4*s4;
+      long d4=(long)h0*r4+(long)h1*r3+(long)h2*r2+(long)h3*r1+(long)h4*r0;
+
+      long c;
+      c=d0>>>26; h0=(int)d0&0x3ffffff; d1+=c;
+      c=d1>>>26; h1=(int)d1&0x3ffffff; d2+=c;
+      c=d2>>>26; h2=(int)d2&0x3ffffff; d3+=c;
+      c=d3>>>26; h3=(int)d3&0x3ffffff; d4+=c;
+      c=d4>>>26; h4=(int)d4&0x3ffffff;
+      h0+=(int)c*5;
+      h1+=h0>>>26; h0&=0x3ffffff;
+    }
+
+    public void doFinal(byte[] out, int s){
+      int c;
+      c=h1>>>26; h1&=0x3ffffff; h2+=c;
+      c=h2>>>26; h2&=0x3ffffff; h3+=c;
+      c=h3>>>26; h3&=0x3ffffff; h4+=c;
+      c=h4>>>26; h4&=0x3ffffff; h0+=c*5;
+      c=h0>>>26; h0&=0x3ffffff; h1+=c;
+
+      // Compute h+-p and select it if h>=p.
+      int g0=h0+5; c=g0>>>26; g0&=0x3ffffff;
+      int g1=h1+c; c=g1>>>26; g1&=0x3ffffff;
+      int g2=h2+c; c=g2>>>26; g2&=0x3ffffff;
+      int g3=h3+c; c=g3>>>26; g3&=0x3ffffff;
+      int g4=h4+c-(1<<26);
+      int mask=(g4>>>31)-1;
+      h0=(h0&~mask)|(g0&mask);
+      h1=(h1&~mask)|(g1&mask);
+      h2=(h2&~mask)|(g2&mask);
+      h3=(h3&~mask)|(g3&mask);
+      h4=(h4&~mask)|(g4&mask);
+
+      // h=(h+pad)%(2^128)
+      long f;
+      f=((h0|(h1<<26))&0xffffffffL)+(pad0&0xffffffffL);
+      put32(out, s, (int)f);
+      f=(((h1>>>6)|(h2<<20))&0xffffffffL)+(pad1&0xffffffffL)+(f>>>32);
+      put32(out, s+4, (int)f);
+      f=(((h2>>>12)|(h3<<14))&0xffffffffL)+(pad2&0xffffffffL)+(f>>>32);
+      put32(out, s+8, (int)f);
+      f=(((h3>>>18)|(h4<<8))&0xffffffffL)+(pad3&0xffffffffL)+(f>>>32);
+      put32(out, s+12, (int)f);
+    }
+
+    private static void put32(byte[] b, int i, int v){
+      b[i]=(byte)v;
+      b[i+1]=(byte)(v>>>8);
+      b[i+2]=(byte)(v>>>16);
+      b[i+3]=(byte)(v>>>24);
+    }
+  }
+}
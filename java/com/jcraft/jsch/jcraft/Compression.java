@@ -91,50 +91,46 @@ public class Compression implements com.jcraft.jsch.Compression {
     return outputbuf;
   }
 
+  /*
+   * The data are inflated directly into inflated_buf, which is then returned
+   * in place of buffer, and buffer is kept as the output buffer for the next
+   * call.  Thus, in the steady state, the two buffers are simply exchanged,
+   * and nothing is allocated or copied other than the packet header.  The
+   * caller must not retain a reference to buffer after this call.
+   */
   public byte[] uncompress(byte[] buffer, int start, int[] length){
-    int inflated_end=0;
+    int inflated_end=start;
 
     stream.next_in=buffer;
     stream.next_in_index=start;
     stream.avail_in=length[0];
 
     while(true){
-      stream.next_out=tmpbuf;
-      stream.next_out_index=0;
-      stream.avail_out=BUF_SIZE;
+      if(inflated_buf.length-inflated_end<BUF_SIZE){
+        byte[] foo=new byte[Math.max(inflated_buf.length*2,
+                                     inflated_end+BUF_SIZE)];
+        System.arraycopy(inflated_buf, start, foo, start, inflated_end-start);
+        inflated_buf=foo;
+      }
+      stream.next_out=inflated_buf;
+      stream.next_out_index=inflated_end;
+      stream.avail_out=inflated_buf.length-inflated_end;
       int status=stream.inflate(JZlib.Z_PARTIAL_FLUSH);
       switch(status){
         case JZlib.Z_OK:
-	  if(inflated_buf.length<inflated_end+BUF_SIZE-stream.avail_out){
-            int len=inflated_buf.length*2;
-            if(len<inflated_end+BUF_SIZE-stream.avail_out)
-              len=inflated_end+BUF_SIZE-stream.avail_out;
-            byte[] foo=new byte[len];
-	    System.arraycopy(inflated_buf, 0, foo, 0, inflated_end);
-	    inflated_buf=foo;
-	  }
-	  System.arraycopy(tmpbuf, 0,
-			   inflated_buf, inflated_end,
-			   BUF_SIZE-stream.avail_out);
-	  inflated_end+=(BUF_SIZE-stream.avail_out);
-          length[0]=inflated_end;
+          inflated_end=stream.next_out_index;
 	  break;
         case JZlib.Z_BUF_ERROR:
-          if(inflated_end>buffer.length-start){
-            byte[] foo=new byte[inflated_end+start];
-            System.arraycopy(buffer, 0, foo, 0, start);
-            System.arraycopy(inflated_buf, 0, foo, start, inflated_end);
-	    buffer=foo;
-	  }
-	  else{
-            System.arraycopy(inflated_buf, 0, buffer, start, inflated_end);
-	  }
-          length[0]=inflated_end;
-	  return buffer;
+          System.arraycopy(buffer, 0, inflated_buf, 0, start);
+          length[0]=inflated_end-start;
+          byte[] foo=inflated_buf;
+          inflated_buf=buffer;
+	  return foo;
 	default:
 	  System.err.println("uncompress: inflate returnd "+status);
           return null;
       }
     }
   }
+
 }
@@ -0,0 +1,142 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/*
+Copyright (c) 2018 D. R. Commander. All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  1. Redistributions of source code must retain the above copyright notice,
+     this list of conditions and the following disclaimer.
+
+  2. Redistributions in binary form must reproduce the above copyright 
+     notice, this list of conditions and the following disclaimer in 
+     the documentation and/or other materials provided with the distribution.
+
+  3. The names of the authors may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES,
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL JCRAFT,
+INC. OR ANY CONTRIBUTORS TO THIS SOFTWARE BE LIABLE FOR ANY DIRECT, INDIRECT,
+INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA,
+OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.jcraft.jsch.juz;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * This Compression implementation uses java.util.zip, and thus the platform's
+ * native zlib library, rather than com.jcraft.jzlib.  The deflater uses
+ * Z_SYNC_FLUSH rather than Z_PARTIAL_FLUSH, which java.util.zip does not
+ * support.  Both flush modes end each packet on a byte boundary with all of
+ * its data available to the peer's inflater, so the result is compatible
+ * with any zlib or zlib@openssh.com implementation.
+ */
+public class Compression implements com.jcraft.jsch.Compression {
+  static private final int BUF_SIZE=4096;
+  private final int buffer_margin=32+20; // AES256 + HMACSHA1
+  private Deflater deflater;
+  private Inflater inflater;
+  private byte[] tmpbuf=new byte[BUF_SIZE];
+
+  public Compression(){
+  }
+
+  public void init(int type, int level){
+    if(type==DEFLATER){
+      deflater=new Deflater(level);
+    }
+    else if(type==INFLATER){
+      inflater=new Inflater();
+      inflated_buf=new byte[BUF_SIZE];
+    }
+  }
+
+  private byte[] inflated_buf;
+
+  /*
+   * The compressed data are written over the uncompressed data in buf, so the
+   * uncompressed data are first copied into tmpbuf.  (Deflater keeps a
+   * reference to its input until it has been consumed.)
+   */
+  public byte[] compress(byte[] buf, int start, int[] len){
+    int inputlen=len[0]-start;
+    if(tmpbuf.length<inputlen){
+      tmpbuf=new byte[inputlen];
+    }
+    System.arraycopy(buf, start, tmpbuf, 0, inputlen);
+    deflater.setInput(tmpbuf, 0, inputlen);
+
+    int outputlen=start;
+    byte[] outputbuf=buf;
+
+    while(true){
+      if(outputbuf.length<outputlen+BUF_SIZE+buffer_margin){
+        byte[] foo=new byte[(outputlen+BUF_SIZE+buffer_margin)*2];
+        System.arraycopy(outputbuf, 0, foo, 0, outputlen);
+        outputbuf=foo;
+      }
+      int avail=outputbuf.length-outputlen-buffer_margin;
+      int tmp=deflater.deflate(outputbuf, outputlen, avail,
+                               Deflater.SYNC_FLUSH);
+      outputlen+=tmp;
+      // If the output buffer was filled, then there may be more output.
+      if(tmp<avail) break;
+    }
+
+    len[0]=outputlen;
+    return outputbuf;
+  }
+
+  /*
+   * As in com.jcraft.jsch.jcraft.Compression, the data are inflated directly
+   * into inflated_buf, which is then returned in place of buffer, and buffer
+   * is kept as the output buffer for the next call.  The caller must not
+   * retain a reference to buffer after this call.
+   */
+  public byte[] uncompress(byte[] buffer, int start, int[] length){
+    int inflated_end=start;
+
+    inflater.setInput(buffer, start, length[0]);
+
+    try{
+      while(true){
+        if(inflated_buf.length-inflated_end<BUF_SIZE){
+          byte[] foo=new byte[Math.max(inflated_buf.length*2,
+                                       inflated_end+BUF_SIZE)];
+          System.arraycopy(inflated_buf, start, foo, start, inflated_end-start);
+          inflated_buf=foo;
+        }
+        int avail=inflated_buf.length-inflated_end;
+        int tmp=inflater.inflate(inflated_buf, inflated_end, avail);
+        inflated_end+=tmp;
+        if(tmp<avail){
+          if(inflater.needsInput()) break;
+          System.err.println("uncompress: inflater stopped with "+
+                             inflater.getRemaining()+" bytes remaining");
+          return null;
+        }
+      }
+    }
+    catch(DataFormatException e){
+      System.err.println("uncompress: "+e.getMessage());
+      return null;
+    }
+
+    System.arraycopy(buffer, 0, inflated_buf, 0, start);
+    length[0]=inflated_end-start;
+    byte[] foo=inflated_buf;
+    inflated_buf=buffer;
+    return foo;
+  }
+}
@@ -74,64 +74,76 @@ public class SocketDescriptor implements FileDescriptor {
     return SelectorProvider.provider();
   }
 
-  public synchronized int read(byte[] buf, int bufPtr, int length) {
-    int n;
-    ByteBuffer b = ByteBuffer.allocate(length);
-    try {
-      n = channel.read(b);
-    } catch (IOException e) {
-      throw new WarningException("Read error: " + e.getMessage());
-    }
-    if (n <= 0)
-      return (n == 0) ? -1 : 0;
-    ((Buffer)b).flip();
-    b.get(buf, bufPtr, n);
-    ((Buffer)b).clear();
-    return n;
+  // Reads and writes are serialized separately, so that a thread waiting for
+  // the socket to become writable does not block a thread that is reading
+  // from it (and vice versa.)
 
+  public int read(byte[] buf, int bufPtr, int length) {
+    synchronized(readLock) {
+      int n;
+      ByteBuffer b = ByteBuffer.allocate(length);
+      try {
+        n = channel.read(b);
+      } catch (IOException e) {
+        throw new WarningException("Read error: " + e.getMessage());
+      }
+      if (n <= 0)
+        return (n == 0) ? -1 : 0;
+      ((Buffer)b).flip();
+      b.get(buf, bufPtr, n);
+      ((Buffer)b).clear();
+      return n;
+    }
   }
 
-  public synchronized int write(byte[] buf, int bufPtr, int length) {
-    int n;
-    ByteBuffer b = ByteBuffer.allocate(length);
-    b.put(buf, bufPtr, length);
-    ((Buffer)b).flip();
-    try {
-      n = channel.write(b);
-    } catch (IOException e) {
-      throw new ErrorException("Write error: " + e.getMessage());
+  public int write(byte[] buf, int bufPtr, int length) {
+    synchronized(writeLock) {
+      int n;
+      ByteBuffer b = ByteBuffer.allocate(length);
+      b.put(buf, bufPtr, length);
+      ((Buffer)b).flip();
+      try {
+        n = channel.write(b);
+      } catch (IOException e) {
+        throw new ErrorException("Write error: " + e.getMessage());
+      }
+      ((Buffer)b).clear();
+      return n;
     }
-    ((Buffer)b).clear();
-    return n;
   }
 
-  public synchronized int select(int interestOps, Integer timeout) {
-    int n;
+  public int select(int interestOps, Integer timeout) {
     Selector selector;
+    Object lock;
     if ((interestOps & SelectionKey.OP_READ) != 0) {
       selector = readSelector;
+      lock = readLock;
     } else {
       selector = writeSelector;
+      lock = writeLock;
     }
-    selector.selectedKeys().clear();
-    try {
-      if (timeout == null) {
-        n = selector.select();
-      } else {
-        int tv = timeout.intValue();
-        switch(tv) {
-        case 0:
-          n = selector.selectNow();
-          break;
-        default:
-          n = selector.select((long)tv);
-          break;
+    synchronized(lock) {
+      int n;
+      selector.selectedKeys().clear();
+      try {
+        if (timeout == null) {
+          n = selector.select();
+        } else {
+          int tv = timeout.intValue();
+          switch(tv) {
+          case 0:
+            n = selector.selectNow();
+            break;
+          default:
+            n = selector.select((long)tv);
+            break;
+          }
         }
+      } catch (IOException e) {
+        throw new SystemException(e.toString());
       }
-    } catch (IOException e) {
-      throw new SystemException(e.toString());
+      return n;
     }
-    return n;
   }
 
   public int write(ByteBuffer buf) {
@@ -240,5 +252,7 @@ public class SocketDescriptor implements FileDescriptor {
   protected SocketChannel channel;
   protected Selector writeSelector;
   protected Selector readSelector;
+  private final Object readLock = new Object();
+  private final Object writeLock = new Object();
 
 }
@@ -0,0 +1,190 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// StreamDescriptor is a FileDescriptor that connects the RFB streams to an
+// in-process transport (such as an SSH channel) rather than to a socket.
+// Outgoing data is written directly to the transport's OutputStream.
+// Incoming data is passed to put() by reference, in the transport's own
+// buffers, which are queued until they have been read and then handed back
+// to the transport through a Recycler.  Thus, incoming data is copied only
+// once, from the transport's buffers into the RFB input buffer.  put() blocks
+// while the queued buffers occupy more than bufSize bytes.  The whole buffer
+// is counted, not just the data in it, so that many small packets cannot pin
+// an unbounded number of transport buffers.
+
+package com.turbovnc.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+
+import com.turbovnc.rdr.*;
+import com.turbovnc.rfb.LogWriter;
+
+public class StreamDescriptor implements FileDescriptor {
+
+  public interface Recycler {
+    void recycle(byte[] buf);
+  }
+
+  public StreamDescriptor(OutputStream out_, int bufSize_) {
+    out = out_;
+    bufSize = bufSize_;
+  }
+
+  // Transport thread
+  public void put(byte[] data, int dataPtr, int length, Recycler recycler)
+                  throws IOException {
+    synchronized(chunks) {
+      try {
+        while (pinned >= bufSize && !closed)
+          chunks.wait();
+      } catch (InterruptedException e) {
+        throw new IOException(e.toString());
+      }
+      if (closed)
+        throw new IOException("Stream closed");
+      chunks.add(new Chunk(data, dataPtr, length, recycler));
+      queued += length;
+      pinned += data.length;
+      chunks.notifyAll();
+    }
+  }
+
+  // The transport calls endOfInput() when the remote end closes the
+  // connection.  Any data remaining in the queue can still be read.
+  public void endOfInput() {
+    synchronized(chunks) {
+      eof = true;
+      chunks.notifyAll();
+    }
+  }
+
+  public int read(byte[] data, int dataPtr, int length) {
+    synchronized(chunks) {
+      waitForData(null);
+      // Returning 0 signals end of stream.
+      if (queued == 0)
+        return 0;
+      int n = 0;
+      while (n < length && !chunks.isEmpty()) {
+        Chunk chunk = chunks.peek();
+        int m = Math.min(length - n, chunk.length);
+        System.arraycopy(chunk.data, chunk.ptr, data, dataPtr + n, m);
+        chunk.ptr += m;
+        chunk.length -= m;
+        n += m;
+        if (chunk.length == 0) {
+          chunks.poll();
+          pinned -= chunk.data.length;
+          chunk.recycle();
+        }
+      }
+      queued -= n;
+      chunks.notifyAll();
+      return n;
+    }
+  }
+
+  public int write(byte[] data, int dataPtr, int length) {
+    if (closed)
+      throw new ErrorException("Write error: Stream closed");
+    try {
+      out.write(data, dataPtr, length);
+      out.flush();
+    } catch (IOException e) {
+      throw new ErrorException("Write error: " + e.getMessage());
+    }
+    return length;
+  }
+
+  // Writes block in the transport until they have been accepted, so the
+  // descriptor is always writable.
+  public int select(int interestOps, Integer timeout) {
+    if ((interestOps & SelectionKey.OP_READ) == 0)
+      return 1;
+    synchronized(chunks) {
+      waitForData(timeout);
+      return (queued > 0 || eof) ? 1 : 0;
+    }
+  }
+
+  public void close() {
+    synchronized(chunks) {
+      if (closed)
+        return;
+      closed = eof = true;
+      while (!chunks.isEmpty())
+        chunks.poll().recycle();
+      queued = pinned = 0;
+      chunks.notifyAll();
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      vlog.debug("Could not close stream: " + e.getMessage());
+    }
+  }
+
+  private void waitForData(Integer timeout) {
+    long deadline = 0;
+    if (timeout != null)
+      deadline = System.currentTimeMillis() + timeout.intValue();
+    try {
+      while (queued == 0 && !eof) {
+        if (timeout == null) {
+          chunks.wait();
+        } else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0)
+            break;
+          chunks.wait(remaining);
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new SystemException(e.toString());
+    }
+  }
+
+  private static class Chunk {
+    Chunk(byte[] data_, int ptr_, int length_, Recycler recycler_) {
+      data = data_;  ptr = ptr_;  length = length_;  recycler = recycler_;
+    }
+
+    void recycle() {
+      if (recycler != null)
+        recycler.recycle(data);
+    }
+
+    final byte[] data;
+    int ptr, length;
+    final Recycler recycler;
+  }
+
+  private final OutputStream out;
+  private final int bufSize;
+  private final ArrayDeque<Chunk> chunks = new ArrayDeque<Chunk>();
+  // queued is the number of bytes of data in the queue, and pinned is the
+  // total size of the buffers that hold them.
+  private int queued, pinned;
+  private boolean eof;
+  private volatile boolean closed;
+
+  static LogWriter vlog = new LogWriter("StreamDescriptor");
+}
@@ -0,0 +1,51 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// StreamSocket is a Socket whose streams are bound to an in-process transport
+// through a StreamDescriptor.
+
+package com.turbovnc.network;
+
+public class StreamSocket extends Socket {
+
+  public StreamSocket(StreamDescriptor fd, String peerName_, int peerPort_) {
+    super(fd);
+    peerName = peerName_;
+    peerPort = peerPort_;
+  }
+
+  public int getMyPort() { return 0; }
+
+  public String getPeerAddress() { return peerName; }
+
+  public String getPeerName() { return peerName; }
+
+  public int getPeerPort() { return peerPort; }
+
+  public String getPeerEndpoint() { return peerName + "::" + peerPort; }
+
+  public boolean sameMachine() { return false; }
+
+  public void shutdown() {
+    super.shutdown();
+    getFd().close();
+  }
+
+  private final String peerName;
+  private final int peerPort;
+}
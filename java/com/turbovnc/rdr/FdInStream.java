@@ -47,6 +47,12 @@ public class FdInStream extends InStream {
   public double getBytesRead() { return bytesRead; }
   public void resetBytesRead() { bytesRead = 0; }
 
+  // If a stall histogram is set, then the time (in microseconds) spent
+  // waiting for data to arrive is recorded in it whenever a read blocks.
+  public void setStallHistogram(Histogram histogram) {
+    stallHistogram = histogram;
+  }
+
   public FdInStream(FileDescriptor fd_) { this(fd_, -1, 0, false); }
 
   public FdInStream(FileDescriptor fd_, FdInStreamBlockCallback blockCallback_,
@@ -138,6 +144,11 @@ public class FdInStream extends InStream {
     end -= ptr;
     ptr = 0;
 
+    Object event = null;
+    if (FlightRecorder.enabled && end < itemSize)
+      event = FlightRecorder.recorder.beginSocketWait();
+    int start = end;
+
     int bytesToRead;
     while (end < itemSize) {
       bytesToRead = bufSize - end;
@@ -159,6 +170,9 @@ public class FdInStream extends InStream {
       end += n;
     }
 
+    if (FlightRecorder.enabled && event != null)
+      FlightRecorder.recorder.endSocketWait(event, end - start);
+
     if (itemSize * nItems > end - ptr)
       nItems = (end - ptr) / itemSize;
 
@@ -174,6 +188,7 @@ public class FdInStream extends InStream {
       before = System.nanoTime();
 
     int n;
+    long stallStart = 0;
     while (true) {
       do {
         Integer tv;
@@ -194,9 +209,14 @@ public class FdInStream extends InStream {
       if (!wait) return 0;
       if (blockCallback == null) throw new TimedOut();
 
+      if (stallStart == 0)
+        stallStart = System.nanoTime();
       blockCallback.blockCallback();
     }
 
+    if (stallStart != 0 && stallHistogram != null)
+      stallHistogram.record((System.nanoTime() - stallStart) / 1000);
+
     n = fd.read(buf, bufPtr, len);
 
     if (n == 0) throw new EndOfStream();
@@ -250,4 +270,5 @@ public class FdInStream extends InStream {
 
   double tRead;
   long bytesRead;
+  private Histogram stallHistogram;
 }
@@ -0,0 +1,70 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// FlightRecorder emits Java Flight Recorder events from the RFB pipeline, so
+// that a JFR recording can correlate framebuffer updates, rectangles, socket
+// waits, and blits with GC pauses and other JVM activity.
+//
+// The JFR API is only available in Java 11 and later, so the events are
+// implemented in a separate class (JFREvents) that is built only when using a
+// Java 11 or later compiler and is loaded dynamically.  Event generation is
+// disabled unless the turbovnc.jfr system property is set, in which case
+// enabled will be true.  Since enabled is a static final field, the JIT
+// compiler removes the event code from the hot paths when it is false.
+
+package com.turbovnc.rdr;
+
+import com.turbovnc.rfb.LogWriter;
+
+public abstract class FlightRecorder {
+
+  public abstract Object beginUpdate();
+  public abstract void endUpdate(Object event, int rects, long bytes);
+
+  public abstract Object beginRect();
+  public abstract void endRect(Object event, int encoding, int x, int y,
+                               int w, int h, long bytes);
+
+  public abstract Object beginSocketWait();
+  public abstract void endSocketWait(Object event, int bytes);
+
+  public abstract Object beginBlit();
+  public abstract void endBlit(Object event, int x, int y, int w, int h);
+
+  // vlog must be initialized before load() is called.
+  static LogWriter vlog = new LogWriter("FlightRecorder");
+
+  public static final FlightRecorder recorder = load();
+  public static final boolean enabled = recorder != null;
+
+  private static FlightRecorder load() {
+    String prop = System.getProperty("turbovnc.jfr");
+    if (prop == null || !(prop.equals("1") ||
+                          prop.equalsIgnoreCase("true") ||
+                          prop.equalsIgnoreCase("yes")))
+      return null;
+    try {
+      Class<?> c = Class.forName("com.turbovnc.rdr.JFREvents");
+      return (FlightRecorder)c.getDeclaredConstructor().newInstance();
+    } catch (Throwable e) {
+      vlog.error("WARNING: Could not enable Java Flight Recorder events:");
+      vlog.error("  " + e.toString());
+      return null;
+    }
+  }
+}
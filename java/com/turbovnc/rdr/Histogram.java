@@ -0,0 +1,139 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// Histogram records non-negative long values into a fixed number of
+// logarithmically-spaced buckets.  Each power of 2 is split into SUB_BUCKETS
+// linear sub-buckets, so percentiles are accurate to within 1/SUB_BUCKETS of
+// the true value, regardless of the magnitude of the recorded values.
+// Histograms are written by the RFB thread and read by JMX, so all methods
+// are synchronized.
+
+package com.turbovnc.rdr;
+
+import java.beans.ConstructorProperties;
+
+public class Histogram {
+
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  public Histogram() {
+    buckets = new long[NUM_BUCKETS];
+    reset();
+  }
+
+  public final synchronized void record(long value) {
+    if (value < 0) value = 0;
+    buckets[bucketIndex(value)]++;
+    count++;
+    sum += value;
+    if (value < min) min = value;
+    if (value > max) max = value;
+  }
+
+  public final synchronized void reset() {
+    java.util.Arrays.fill(buckets, 0);
+    count = max = 0;
+    sum = 0.0;
+    min = Long.MAX_VALUE;
+  }
+
+  public final synchronized long getCount() { return count; }
+
+  public final synchronized long getMin() { return count > 0 ? min : 0; }
+
+  public final synchronized long getMax() { return max; }
+
+  public final synchronized double getMean() {
+    return count > 0 ? sum / (double)count : 0.0;
+  }
+
+  // Returns the upper bound of the bucket containing the value at the given
+  // percentile (0-100).
+  public final synchronized long getValueAtPercentile(double percentile) {
+    if (count == 0) return 0;
+    long rank = (long)Math.ceil(percentile / 100.0 * (double)count);
+    if (rank < 1) rank = 1;
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      total += buckets[i];
+      if (total >= rank)
+        return Math.min(Math.max(bucketUpperBound(i), min), max);
+    }
+    return max;
+  }
+
+  public final synchronized Snapshot snapshot() {
+    return new Snapshot(getCount(), getMin(), getMax(), getMean(),
+                        getValueAtPercentile(50.0),
+                        getValueAtPercentile(90.0),
+                        getValueAtPercentile(99.0),
+                        getValueAtPercentile(99.9));
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS)
+      return (int)value;
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS)
+      return index;
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long)(SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lower + (1L << shift) - 1;
+  }
+
+  // Snapshot is an immutable summary of a histogram.  Its getters allow it to
+  // be mapped to a JMX CompositeData object.
+  public static final class Snapshot {
+    @ConstructorProperties({ "count", "min", "max", "mean", "p50", "p90",
+                             "p99", "p999" })
+    public Snapshot(long count_, long min_, long max_, double mean_,
+                    long p50_, long p90_, long p99_, long p999_) {
+      count = count_;  min = min_;  max = max_;  mean = mean_;
+      p50 = p50_;  p90 = p90_;  p99 = p99_;  p999 = p999_;
+    }
+
+    public long getCount() { return count; }
+    public long getMin() { return min; }
+    public long getMax() { return max; }
+    public double getMean() { return mean; }
+    public long getP50() { return p50; }
+    public long getP90() { return p90; }
+    public long getP99() { return p99; }
+    public long getP999() { return p999; }
+
+    public String toString() {
+      return String.format("n=%d min=%d mean=%.1f p50=%d p90=%d p99=%d " +
+                           "p99.9=%d max=%d", count, min, mean, p50, p90,
+                           p99, p999, max);
+    }
+
+    private final long count, min, max, p50, p90, p99, p999;
+    private final double mean;
+  }
+
+  private final long[] buckets;
+  private long count, min, max;
+  private double sum;
+}
@@ -144,177 +144,218 @@ public abstract class InStream {
     }
   }
 
+  // readPixels() reads an array of pixels into a buffer.  The typed variants
+  // below are used by callers that know the pixel type in advance, so that the
+  // inner loops never need to dispatch on the buffer type.
+
   public final void readPixels(Object buf, int length, int bytesPerPixel,
                                boolean bigEndian) {
+    if (buf instanceof byte[])
+      readPixels((byte[])buf, length, bytesPerPixel, bigEndian);
+    else if (buf instanceof short[])
+      readPixels((short[])buf, length, bytesPerPixel, bigEndian);
+    else
+      readPixels((int[])buf, length, bytesPerPixel, bigEndian);
+  }
+
+  public final void readPixels(byte[] buf, int length, int bytesPerPixel,
+                               boolean bigEndian) {
+    if (bytesPerPixel != 1)
+      throw new ErrorException("Unsupported pixel format");
+    readBytes(buf, 0, length);
+  }
+
+  public final void readPixels(short[] buf, int length, int bytesPerPixel,
+                               boolean bigEndian) {
     int nbytes = length * bytesPerPixel;
     int ptr = 0, srcPtr = 0;
     byte[] pixels = new byte[nbytes];
 
+    if (bytesPerPixel != 2)
+      throw new ErrorException("Unsupported pixel format");
+
     readBytes(pixels, 0, nbytes);
 
-    if (bytesPerPixel == 1 && buf instanceof byte[]) {
-      System.arraycopy(pixels, 0, (byte[])buf, 0, length);
-    } else if (bytesPerPixel == 2 && buf instanceof short[]) {
-      if (bigEndian) {
-        while (length-- > 0) {
-          ((short[])buf)[ptr] = (short)((pixels[srcPtr++] & 0xff) << 8);
-          ((short[])buf)[ptr++] |= (pixels[srcPtr++] & 0xff);
-        }
-      } else {
-        while (length-- > 0) {
-          ((short[])buf)[ptr] = (short)(pixels[srcPtr++] & 0xff);
-          ((short[])buf)[ptr++] |= (pixels[srcPtr++] & 0xff) << 8;
-        }
+    if (bigEndian) {
+      while (length-- > 0) {
+        buf[ptr++] = (short)((pixels[srcPtr] & 0xff) << 8 |
+                             (pixels[srcPtr + 1] & 0xff));
+        srcPtr += 2;
       }
-    } else if (bytesPerPixel == 3 && buf instanceof int[]) {
+    } else {
+      while (length-- > 0) {
+        buf[ptr++] = (short)((pixels[srcPtr] & 0xff) |
+                             (pixels[srcPtr + 1] & 0xff) << 8);
+        srcPtr += 2;
+      }
+    }
+  }
+
+  public final void readPixels(int[] buf, int length, int bytesPerPixel,
+                               boolean bigEndian) {
+    int nbytes = length * bytesPerPixel;
+    int ptr = 0, srcPtr = 0;
+    byte[] pixels = new byte[nbytes];
+
+    readBytes(pixels, 0, nbytes);
+
+    if (bytesPerPixel == 3) {
       if (bigEndian) {
         while (length-- > 0)
-          ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                (pixels[srcPtr++] & 0xff) << 16 |
-                                (pixels[srcPtr++] & 0xff) << 8 |
-                                0x000000ff;
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       0x000000ff;
       } else {
         while (length-- > 0)
-          ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) |
-                                (pixels[srcPtr++] & 0xff) << 8 |
-                                (pixels[srcPtr++] & 0xff) << 16 |
-                                0xff000000;
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       0xff000000;
       }
-    } else if (bytesPerPixel == 4 && buf instanceof int[]) {
+    } else if (bytesPerPixel == 4) {
       if (bigEndian) {
         while (length-- > 0)
-          ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                (pixels[srcPtr++] & 0xff) << 16 |
-                                (pixels[srcPtr++] & 0xff) << 8 |
-                                (pixels[srcPtr++] & 0xff);
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       (pixels[srcPtr++] & 0xff);
       } else {
         while (length-- > 0)
-          ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) |
-                                (pixels[srcPtr++] & 0xff) << 8 |
-                                (pixels[srcPtr++] & 0xff) << 16 |
-                                (pixels[srcPtr++] & 0xff) << 24;
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       (pixels[srcPtr++] & 0xff) << 24;
       }
     } else {
-      assert buf instanceof int[];
+      byte[] pix = new byte[4];
       if (bigEndian) {
         while (length-- > 0) {
-          byte[] pix = new byte[4];
           System.arraycopy(pixels, srcPtr, pix, 0, bytesPerPixel);
-          ((int[])buf)[ptr++] = (pix[0] & 0xff) << 24 |
-                                (pix[1] & 0xff) << 16 |
-                                (pix[2] & 0xff) << 8 |
-                                0x000000ff;
+          buf[ptr++] = (pix[0] & 0xff) << 24 |
+                       (pix[1] & 0xff) << 16 |
+                       (pix[2] & 0xff) << 8 |
+                       0x000000ff;
           srcPtr += bytesPerPixel;
         }
       } else {
         while (length-- > 0) {
-          byte[] pix = new byte[4];
           System.arraycopy(pixels, srcPtr, pix, 0, bytesPerPixel);
-          ((int[])buf)[ptr++] = (pix[0] & 0xff) |
-                                (pix[1] & 0xff) << 8 |
-                                (pix[2] & 0xff) << 16 |
-                                0xff000000;
+          buf[ptr++] = (pix[0] & 0xff) |
+                       (pix[1] & 0xff) << 8 |
+                       (pix[2] & 0xff) << 16 |
+                       0xff000000;
           srcPtr += bytesPerPixel;
         }
       }
     }
   }
 
-
   public final void readPixels(Object buf, int stride, Rect r,
                                int bytesPerPixel, boolean bigEndian) {
+    if (buf instanceof byte[])
+      readPixels((byte[])buf, stride, r, bytesPerPixel, bigEndian);
+    else if (buf instanceof short[])
+      readPixels((short[])buf, stride, r, bytesPerPixel, bigEndian);
+    else
+      readPixels((int[])buf, stride, r, bytesPerPixel, bigEndian);
+  }
+
+  public final void readPixels(byte[] buf, int stride, Rect r,
+                               int bytesPerPixel, boolean bigEndian) {
+    int w = r.width(), h = r.height();
+    int ptr = r.tl.y * stride + r.tl.x;
+
+    if (bytesPerPixel != 1)
+      throw new ErrorException("Unsupported pixel format");
+
+    while (h > 0) {
+      readBytes(buf, ptr, w);
+      ptr += stride;
+      h--;
+    }
+  }
+
+  public final void readPixels(short[] buf, int stride, Rect r,
+                               int bytesPerPixel, boolean bigEndian) {
     int w = r.width(), h = r.height();
     int nbytes = w * h * bytesPerPixel;
     int ptr = r.tl.y * stride + r.tl.x, srcPtr = 0;
     byte[] pixels = new byte[nbytes];
     int pad = stride - w;
 
+    if (bytesPerPixel != 2)
+      throw new ErrorException("Unsupported pixel format");
+
     readBytes(pixels, 0, nbytes);
 
-    if (bytesPerPixel == 1 && buf instanceof byte[]) {
+    if (bigEndian) {
       while (h > 0) {
-        System.arraycopy(pixels, srcPtr, (byte[])buf, ptr, w);
-        ptr += stride;
-        srcPtr += w;
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow) {
+          buf[ptr++] = (short)((pixels[srcPtr] & 0xff) << 8 |
+                               (pixels[srcPtr + 1] & 0xff));
+          srcPtr += 2;
+        }
+        ptr += pad;
         h--;
       }
-    } else if (bytesPerPixel == 2 && buf instanceof short[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow) {
-            ((short[])buf)[ptr] = (short)((pixels[srcPtr++] & 0xff) << 8);
-            ((short[])buf)[ptr++] |= (pixels[srcPtr++] & 0xff);
-          }
-          ptr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow) {
-            ((short[])buf)[ptr] = (short)(pixels[srcPtr++] & 0xff);
-            ((short[])buf)[ptr++] |= (pixels[srcPtr++] & 0xff) << 8;
-          }
-          ptr += pad;
-          h--;
+    } else {
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow) {
+          buf[ptr++] = (short)((pixels[srcPtr] & 0xff) |
+                               (pixels[srcPtr + 1] & 0xff) << 8);
+          srcPtr += 2;
         }
+        ptr += pad;
+        h--;
       }
-    } else if (bytesPerPixel == 3 && buf instanceof int[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow)
-            ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                  (pixels[srcPtr++] & 0xff) << 16 |
-                                  (pixels[srcPtr++] & 0xff) << 8 |
-                                  0x000000ff;
-          ptr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow)
-            ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) |
-                                  (pixels[srcPtr++] & 0xff) << 8 |
-                                  (pixels[srcPtr++] & 0xff) << 16 |
-                                  0xff000000;
-          ptr += pad;
-          h--;
+    }
+  }
+
+  public final void readPixels(int[] buf, int stride, Rect r,
+                               int bytesPerPixel, boolean bigEndian) {
+    int w = r.width(), h = r.height();
+    int nbytes = w * h * bytesPerPixel;
+    int ptr = r.tl.y * stride + r.tl.x, srcPtr = 0;
+    byte[] pixels = new byte[nbytes];
+    int pad = stride - w;
+
+    if (bytesPerPixel != 3 && bytesPerPixel != 4)
+      throw new ErrorException("Unsupported pixel format");
+
+    readBytes(pixels, 0, nbytes);
+
+    // The fourth byte of a 32-bit pixel is ignored.
+    int skip = bytesPerPixel - 3;
+
+    if (bigEndian) {
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow) {
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       0x000000ff;
+          srcPtr += skip;
         }
+        ptr += pad;
+        h--;
       }
-    } else if (bytesPerPixel == 4 && buf instanceof int[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow) {
-            ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                  (pixels[srcPtr++] & 0xff) << 16 |
-                                  (pixels[srcPtr++] & 0xff) << 8 |
-                                  0x000000ff;
-            srcPtr++;
-          }
-          ptr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = ptr + w;
-          while (ptr < endOfRow) {
-            ((int[])buf)[ptr++] = (pixels[srcPtr++] & 0xff) |
-                                  (pixels[srcPtr++] & 0xff) << 8 |
-                                  (pixels[srcPtr++] & 0xff) << 16 |
-                                  0xff000000;
-            srcPtr++;
-          }
-          ptr += pad;
-          h--;
+    } else {
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow) {
+          buf[ptr++] = (pixels[srcPtr++] & 0xff) |
+                       (pixels[srcPtr++] & 0xff) << 8 |
+                       (pixels[srcPtr++] & 0xff) << 16 |
+                       0xff000000;
+          srcPtr += skip;
         }
+        ptr += pad;
+        h--;
       }
-    } else {
-      // We should never get here
-      throw new ErrorException("Unsupported pixel format");
     }
   }
 
@@ -0,0 +1,126 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// Java Flight Recorder implementation of FlightRecorder.  This class requires
+// Java 11 or later and is loaded dynamically by FlightRecorder.load().
+
+package com.turbovnc.rdr;
+
+import jdk.jfr.*;
+
+class JFREvents extends FlightRecorder {
+
+  @Name("com.turbovnc.FramebufferUpdate")
+  @Label("Framebuffer Update")
+  @Category("TurboVNC")
+  @StackTrace(false)
+  static class UpdateEvent extends Event {
+    @Label("Rectangles") int rects;
+    @Label("Bytes Received") @DataAmount long bytes;
+  }
+
+  @Name("com.turbovnc.Rect")
+  @Label("Rectangle")
+  @Category("TurboVNC")
+  @StackTrace(false)
+  static class RectEvent extends Event {
+    @Label("Encoding") int encoding;
+    @Label("X") int x;
+    @Label("Y") int y;
+    @Label("Width") int width;
+    @Label("Height") int height;
+    @Label("Bytes Received") @DataAmount long bytes;
+  }
+
+  @Name("com.turbovnc.SocketWait")
+  @Label("Socket Wait")
+  @Category("TurboVNC")
+  @StackTrace(false)
+  static class SocketWaitEvent extends Event {
+    @Label("Bytes Read") @DataAmount int bytes;
+  }
+
+  @Name("com.turbovnc.Blit")
+  @Label("Blit")
+  @Category("TurboVNC")
+  @StackTrace(false)
+  static class BlitEvent extends Event {
+    @Label("X") int x;
+    @Label("Y") int y;
+    @Label("Width") int width;
+    @Label("Height") int height;
+  }
+
+  public Object beginUpdate() {
+    UpdateEvent event = new UpdateEvent();
+    event.begin();
+    return event;
+  }
+
+  public void endUpdate(Object obj, int rects, long bytes) {
+    UpdateEvent event = (UpdateEvent)obj;
+    if (event == null || !event.shouldCommit()) return;
+    event.rects = rects;
+    event.bytes = bytes;
+    event.commit();
+  }
+
+  public Object beginRect() {
+    RectEvent event = new RectEvent();
+    event.begin();
+    return event;
+  }
+
+  public void endRect(Object obj, int encoding, int x, int y, int w, int h,
+                      long bytes) {
+    RectEvent event = (RectEvent)obj;
+    if (event == null || !event.shouldCommit()) return;
+    event.encoding = encoding;
+    event.x = x;  event.y = y;
+    event.width = w;  event.height = h;
+    event.bytes = bytes;
+    event.commit();
+  }
+
+  public Object beginSocketWait() {
+    SocketWaitEvent event = new SocketWaitEvent();
+    event.begin();
+    return event;
+  }
+
+  public void endSocketWait(Object obj, int bytes) {
+    SocketWaitEvent event = (SocketWaitEvent)obj;
+    if (event == null || !event.shouldCommit()) return;
+    event.bytes = bytes;
+    event.commit();
+  }
+
+  public Object beginBlit() {
+    BlitEvent event = new BlitEvent();
+    event.begin();
+    return event;
+  }
+
+  public void endBlit(Object obj, int x, int y, int w, int h) {
+    BlitEvent event = (BlitEvent)obj;
+    if (event == null || !event.shouldCommit()) return;
+    event.x = x;  event.y = y;
+    event.width = w;  event.height = h;
+    event.commit();
+  }
+}
@@ -0,0 +1,156 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+//
+// A QueuedOutStream decouples the threads that write to a stream from the
+// (possibly blocking) underlying stream.  Each flush() appends the data
+// written since the last flush() to a lock-free queue, and a dedicated sender
+// thread, which is the only thread that ever touches the underlying stream,
+// drains the queue.  The underlying stream is flushed only when the queue is
+// empty, so messages that arrive while the sender thread is blocked are
+// combined into one write.
+//
+// Data is sent in the order in which it was flushed, regardless of which
+// thread wrote it.  The amount of queued data is bounded by maxQueued.  If
+// the queue is full, flush() waits for the sender thread to catch up, unless
+// the queue is empty (so a single oversized chunk, such as a large clipboard
+// transfer, can always be sent.)  Errors that occur in the sender thread are
+// rethrown by the next call to flush().
+//
+
+package com.turbovnc.rdr;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class QueuedOutStream extends OutStream implements Runnable {
+
+  static final int DEFAULT_BUF_SIZE = 16384;
+
+  public QueuedOutStream(OutStream out_, int maxQueued_, String name) {
+    out = out_;
+    maxQueued = maxQueued_;
+    b = new byte[DEFAULT_BUF_SIZE];
+    ptr = 0;
+    end = b.length;
+    thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public int length() { return offset + ptr; }
+
+  // backlogged() returns true if data that has been flushed has not yet been
+  // sent, either because it is still queued or because the sender thread is
+  // writing it to the underlying stream.  It never touches the underlying
+  // stream, so it does not block when the sender thread is blocked.
+
+  public boolean backlogged() { return sending || queued.get() > 0; }
+
+  public synchronized void flush() {
+    enqueue();
+  }
+
+  // close() causes the sender thread to exit once it has drained the queue.
+
+  public void close() {
+    closed = true;
+    LockSupport.unpark(thread);
+  }
+
+  protected synchronized int overrun(int itemSize, int nItems) {
+    enqueue();
+
+    if (itemSize * nItems > end)
+      nItems = end / itemSize;
+
+    return nItems;
+  }
+
+  private void enqueue() {
+    checkError();
+    int len = ptr;
+    if (len == 0)
+      return;
+
+    while (queued.get() > 0 && queued.get() + len > maxQueued) {
+      LockSupport.parkNanos(WAIT_NS);
+      checkError();
+    }
+
+    byte[] chunk = new byte[len];
+    System.arraycopy(b, 0, chunk, 0, len);
+    queue.offer(chunk);
+    queued.addAndGet(len);
+    offset += len;
+    ptr = 0;
+    LockSupport.unpark(thread);
+  }
+
+  private void checkError() {
+    if (error != null)
+      throw new SystemException(error.toString());
+    if (closed)
+      throw new ErrorException("Stream has been closed");
+  }
+
+  // Sender thread
+  public void run() {
+    boolean unflushed = false;
+    try {
+      while (true) {
+        byte[] chunk = queue.poll();
+        if (chunk == null) {
+          if (unflushed) {
+            out.flush();
+            unflushed = false;
+            continue;
+          }
+          sending = false;
+          if (closed)
+            break;
+          LockSupport.park(this);
+          continue;
+        }
+        sending = true;
+        out.writeBytes(chunk, 0, chunk.length);
+        unflushed = true;
+        queued.addAndGet(-chunk.length);
+      }
+    } catch (Exception e) {
+      error = e;
+      queue.clear();
+      queued.set(0);
+      sending = false;
+    }
+  }
+
+  static final long WAIT_NS = 1000000;
+
+  private final OutStream out;
+  private final int maxQueued;
+  private final Thread thread;
+  private final ConcurrentLinkedQueue<byte[]> queue =
+    new ConcurrentLinkedQueue<byte[]>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private int offset;
+  private volatile boolean closed;
+  private volatile boolean sending;
+  private volatile Exception error;
+}
@@ -89,6 +89,13 @@ public abstract class CMsgReader {
     if (r.isEmpty())
       vlog.error("Ignoring zero size rect");
 
+    Object event = null;
+    int startPos = 0;
+    if (FlightRecorder.enabled) {
+      event = FlightRecorder.recorder.beginRect();
+      startPos = is.pos();
+    }
+
     handler.beginRect(r, encoding);
 
     if (encoding == Encodings.encodingCopyRect) {
@@ -101,6 +108,7 @@ public abstract class CMsgReader {
           vlog.error("Unknown rect encoding " + encoding);
           throw new ErrorException("Unknown rect encoding" + encoding);
         }
+        decoders[encoding].setPF(handler.cp.pf());
       }
       handler.startDecodeTimer();
       decoders[encoding].readRect(r, handler);
@@ -108,6 +116,11 @@ public abstract class CMsgReader {
     }
 
     handler.endRect(r, encoding);
+
+    if (FlightRecorder.enabled)
+      FlightRecorder.recorder.endRect(event, encoding, r.tl.x, r.tl.y,
+                                      r.width(), r.height(),
+                                      is.pos() - startPos);
   }
 
   protected void readCopyRect(Rect r) {
@@ -212,6 +225,15 @@ public abstract class CMsgReader {
     }
   }
 
+  // setPF() must be called whenever the pixel format used to decode
+  // framebuffer updates changes.
+  public final void setPF(PixelFormat pf) {
+    for (int i = 0; i < decoders.length; i++) {
+      if (decoders[i] != null)
+        decoders[i].setPF(pf);
+    }
+  }
+
   public abstract void readServerInit(boolean benchmark);
 
   // readMsg() reads a message, calling the handler as appropriate.
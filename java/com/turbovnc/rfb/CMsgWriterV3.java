@@ -37,10 +37,36 @@ public class CMsgWriterV3 extends CMsgWriter {
     os.writeU8(type);
   }
 
+  // If the calling thread has corked the writer, then endMsg() leaves the
+  // message in the output buffer, and it is sent along with any subsequent
+  // messages when the writer is uncorked.  This allows a burst of small
+  // messages (such as a key event with modifiers or an update request
+  // followed by a fence) to be sent with one write rather than several.
+  // Messages written by other threads flush the buffer as usual.
   synchronized public void endMsg() {
+    if (corkCount > 0 && Thread.currentThread() == corkOwner)
+      return;
     os.flush();
   }
 
+  // Only one thread can cork the writer at a time.  If another thread has
+  // already corked it, then cork() has no effect.
+  synchronized public void cork() {
+    if (corkCount > 0 && Thread.currentThread() != corkOwner)
+      return;
+    corkOwner = Thread.currentThread();
+    corkCount++;
+  }
+
+  synchronized public void uncork() {
+    if (corkCount == 0 || Thread.currentThread() != corkOwner)
+      return;
+    if (--corkCount == 0) {
+      corkOwner = null;
+      os.flush();
+    }
+  }
+
   synchronized public void writeSetDesktopSize(int width, int height,
                                                ScreenSet layout) {
     if (!cp.supportsSetDesktopSize)
@@ -157,61 +183,112 @@ public class CMsgWriterV3 extends CMsgWriter {
   }
 
   synchronized public void writeGIIEvent(ExtInputDevice dev, ExtInputEvent e) {
+    writeGIIEvents(dev, Collections.singletonList(e));
+  }
+
+  // writeGIIEvents() sends a batch of events from the same device in as few
+  // GII event injection messages as possible.  The length of a message is a
+  // 16-bit field, so a batch larger than GII_MAX_EVENT_LENGTH bytes is split
+  // into multiple messages.
+
+  synchronized public void writeGIIEvents(ExtInputDevice dev,
+                                          List<ExtInputEvent> events) {
     if (!cp.supportsGII)
       throw new ErrorException("Server does not support GII");
 
-    if ((e.type == giiTypes.giiButtonPress ||
-         e.type == giiTypes.giiButtonRelease) &&
-        (e.buttonNumber > dev.numButtons || e.buttonNumber < 1)) {
-      vlog.error("Button " + e.buttonNumber + " event ignored.");
-      vlog.error("  Device " + dev.name + " has buttons 1-" + dev.numButtons +
-                 ".");
-      return;
-    }
-
-    if ((e.type == giiTypes.giiValuatorRelative ||
-         e.type == giiTypes.giiValuatorAbsolute) &&
-        (e.firstValuator + e.numValuators > dev.valuators.size())) {
-      vlog.error("Valuator " + e.firstValuator + "-" +
-                 (e.firstValuator + e.numValuators - 1) + " event ignored.");
-      vlog.error("  Device " + dev.name + " has valuators 0-" +
-                 (dev.valuators.size() - 1) + ".");
-      return;
+    ArrayList<ExtInputEvent> valid = new ArrayList<ExtInputEvent>();
+    int length = 0, start = 0;
+
+    for (ExtInputEvent e : events) {
+      if ((e.type == giiTypes.giiButtonPress ||
+           e.type == giiTypes.giiButtonRelease) &&
+          (e.buttonNumber > dev.numButtons || e.buttonNumber < 1)) {
+        vlog.error("Button " + e.buttonNumber + " event ignored.");
+        vlog.error("  Device " + dev.name + " has buttons 1-" +
+                   dev.numButtons + ".");
+        continue;
+      }
+
+      if ((e.type == giiTypes.giiValuatorRelative ||
+           e.type == giiTypes.giiValuatorAbsolute) &&
+          (e.firstValuator + e.numValuators > dev.valuators.size())) {
+        vlog.error("Valuator " + e.firstValuator + "-" +
+                   (e.firstValuator + e.numValuators - 1) +
+                   " event ignored.");
+        vlog.error("  Device " + dev.name + " has valuators 0-" +
+                   (dev.valuators.size() - 1) + ".");
+        continue;
+      }
+
+      int eventLength = giiEventLength(e);
+      if (eventLength == 0)
+        continue;
+      if (length + eventLength > GII_MAX_EVENT_LENGTH) {
+        writeGIIEventMsg(dev, valid.subList(start, valid.size()), length);
+        start = valid.size();
+        length = 0;
+      }
+      length += eventLength;
+      valid.add(e);
     }
 
-    startMsg(MsgTypes.msgTypeGII);
-
-    os.writeU8(giiTypes.giiEvent | giiTypes.giiBE);
+    if (start < valid.size())
+      writeGIIEventMsg(dev, valid.subList(start, valid.size()), length);
+  }
 
+  private static int giiEventLength(ExtInputEvent e) {
     switch (e.type) {
-
     case giiTypes.giiButtonPress:
     case giiTypes.giiButtonRelease:
-
-      os.writeU16(12);
-      os.writeU8(12);
-      os.writeU8(e.type);
-      os.writeU16(0);
-      os.writeU32(dev.remoteID);
-      os.writeU32(e.buttonNumber);
-      break;
-
+      return 12;
     case giiTypes.giiValuatorRelative:
     case giiTypes.giiValuatorAbsolute:
+      return 16 + e.numValuators * 4;
+    }
+    return 0;
+  }
 
-      os.writeU16(16 + e.numValuators * 4);
-      os.writeU8(16 + e.numValuators * 4);
-      os.writeU8(e.type);
-      os.writeU16(0);
-      os.writeU32(dev.remoteID);
-      os.writeU32(e.firstValuator);
-      os.writeU32(e.numValuators);
-      for (int i = 0; i < e.numValuators; i++)
-        os.writeU32(e.valuators[i]);
-      break;
+  private void writeGIIEventMsg(ExtInputDevice dev, List<ExtInputEvent> events,
+                                int length) {
+    startMsg(MsgTypes.msgTypeGII);
 
+    os.writeU8(giiTypes.giiEvent | giiTypes.giiBE);
+    os.writeU16(length);
+
+    for (ExtInputEvent e : events) {
+      switch (e.type) {
+
+      case giiTypes.giiButtonPress:
+      case giiTypes.giiButtonRelease:
+
+        os.writeU8(12);
+        os.writeU8(e.type);
+        os.writeU16(0);
+        os.writeU32(dev.remoteID);
+        os.writeU32(e.buttonNumber);
+        break;
+
+      case giiTypes.giiValuatorRelative:
+      case giiTypes.giiValuatorAbsolute:
+
+        os.writeU8(16 + e.numValuators * 4);
+        os.writeU8(e.type);
+        os.writeU16(0);
+        os.writeU32(dev.remoteID);
+        os.writeU32(e.firstValuator);
+        os.writeU32(e.numValuators);
+        for (int i = 0; i < e.numValuators; i++)
+          os.writeU32(e.valuators[i]);
+        break;
+
+      }
     }
 
     endMsg();
   }
+
+  static final int GII_MAX_EVENT_LENGTH = 0xFFFF;
+
+  private int corkCount;
+  private Thread corkOwner;
 }
@@ -25,6 +25,11 @@ public abstract class Decoder {
 
   public void reset() {}
 
+  // setPF() is called when the decoder is created and whenever the pixel
+  // format changes, so decoders can select their pixel-type-specific code
+  // paths once rather than on every rectangle.
+  public void setPF(PixelFormat pf) {}
+
   public static boolean supported(int encoding) {
 /*
     return encoding <= Encodings.encodingMax && createFns[encoding];
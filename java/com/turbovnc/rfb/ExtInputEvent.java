@@ -27,6 +27,18 @@ public class ExtInputEvent {
   public int firstValuator;
   public int[] valuators = new int[6];
 
+  public ExtInputEvent() {}
+
+  public ExtInputEvent(ExtInputEvent e) {
+    type = e.type;
+    deviceID = e.deviceID;
+    buttonMask = e.buttonMask;
+    buttonNumber = e.buttonNumber;
+    numValuators = e.numValuators;
+    firstValuator = e.firstValuator;
+    valuators = e.valuators.clone();
+  }
+
   public void print() {
     vlog.eidebug("EVENT:");
     vlog.eidebug("  type = " + type);
@@ -61,6 +61,14 @@ public class Rect {
 
   public final void clear() { tl = new Point();  br = new Point(); }
 
+  public final Rect intersect(Rect r) {
+    Rect result = new Rect(Math.max(tl.x, r.tl.x), Math.max(tl.y, r.tl.y),
+                           Math.min(br.x, r.br.x), Math.min(br.y, r.br.y));
+    if (result.isEmpty())
+      result.clear();
+    return result;
+  }
+
   public final boolean enclosedBy(Rect r) {
     return (tl.x >= r.tl.x) && (tl.y >= r.tl.y) &&
            (br.x <= r.br.x) && (br.y <= r.br.y);
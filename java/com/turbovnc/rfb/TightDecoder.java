@@ -75,7 +75,6 @@ public class TightDecoder extends Decoder {
       vlog.info("  " + e.getMessage());
       vlog.info("  Using unaccelerated JPEG decompressor.");
     }
-    tightPalette = new byte[256 * 3];
   }
 
   public void reset() {
@@ -89,28 +88,26 @@ public class TightDecoder extends Decoder {
     return tjd != null;
   }
 
-  short getShort(byte[] src, int srcPtr) {
+  static short getShort(byte[] src, int srcPtr) {
     return (short)((src[srcPtr++] & 0xff) |
                    (src[srcPtr] & 0xff) << 8);
   }
 
-  void checkPalette(int bpp, boolean cutZeros) {
-    if (cutZeros || bpp > 16) {
-      if (palette != null && palette instanceof int[])
-        return;
-      palette = new int[256];
-    } else if (bpp == 8) {
-      if (palette != null && palette instanceof byte[])
-        return;
-      palette = new byte[256];
-    } else if (bpp == 16) {
-      if (palette != null && palette instanceof short[])
-        return;
-      palette = new short[256];
-    } else {
-      // We should never get here
+  // The pixel-type-specific decoding routines are selected once, whenever the
+  // pixel format changes, so that the per-pixel loops operate on a single
+  // array type and can be compiled as such.
+  public void setPF(PixelFormat pf) {
+    serverpf = pf;
+    if (pf.bpp == 32 && pf.is888())
+      pixelDecoder = new PixelDecoder24(pf);
+    else if (pf.bpp == 32)
+      pixelDecoder = new PixelDecoder32(pf);
+    else if (pf.bpp == 16)
+      pixelDecoder = new PixelDecoder16(pf);
+    else if (pf.bpp == 8)
+      pixelDecoder = new PixelDecoder8(pf);
+    else
       throw new ErrorException("Unsupported pixel format");
-    }
   }
 
   void checkNetbuf(int size) {
@@ -131,20 +128,14 @@ public class TightDecoder extends Decoder {
     }
   }
 
-  @SuppressWarnings("fallthrough")
   public void readRect(Rect r, CMsgHandler handler) {
     InStream is = reader.getInStream();
-    boolean cutZeros = false;
-    serverpf = handler.cp.pf();
-    int bpp = serverpf.bpp;
-    cutZeros = false;
-    if (bpp == 32 && serverpf.is888())
-      cutZeros = true;
+    if (pixelDecoder == null || serverpf != handler.cp.pf())
+      setPF(handler.cp.pf());
+    PixelDecoder pd = pixelDecoder;
 
     int compCtl = is.readU8();
 
-    boolean bigEndian = handler.cp.pf().bigEndian;
-
     // Flush zlib streams if we are told by the server to do so.
     for (int i = 0; i < 4; i++) {
       if ((compCtl & 1) != 0)
@@ -172,40 +163,11 @@ public class TightDecoder extends Decoder {
     int w = r.width(), h = r.height();
     int[] stride = { w };
     Object buf = handler.getRawPixelsRW(stride);
-    int pad = stride[0] - w;
     int ptr = r.tl.y * stride[0] + r.tl.x;
 
     // "Fill" compression type.
     if (compCtl == rfbTightFill) {
-      if (cutZeros) {
-        byte[] bytebuf = new byte[3];
-        is.readBytes(bytebuf, 0, 3);
-        int pix = (bytebuf[0] & 0xff) << serverpf.redShift |
-                  (bytebuf[1] & 0xff) << serverpf.greenShift |
-                  (bytebuf[2] & 0xff) << serverpf.blueShift | (0xff << 24);
-        while (h > 0) {
-          Arrays.fill((int[])buf, ptr, ptr + w, pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else if (buf instanceof byte[]) {
-        int pix = is.readU8();
-        while (h > 0) {
-          Arrays.fill((byte[])buf, ptr, ptr + w, (byte)pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else if (buf instanceof short[]) {
-        int pix = is.readPixel(bpp / 8, serverpf.bigEndian);
-        while (h > 0) {
-          Arrays.fill((short[])buf, ptr, ptr + w, (short)pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else {
-        // We should never get here
-        throw new ErrorException("Unsupported pixel type");
-      }
+      pd.fill(is, buf, ptr, stride[0], w, h);
       handler.releaseRawPixels(r);
       return;
     }
@@ -220,13 +182,7 @@ public class TightDecoder extends Decoder {
       switch (filterId) {
       case rfbTightFilterPalette:
         palSize = is.readU8() + 1;
-        checkPalette(bpp, cutZeros);
-        if (cutZeros) {
-          is.readBytes(tightPalette, 0, palSize * 3);
-          serverpf.bufferFromRGB((int[])palette, 0, tightPalette, 0, palSize);
-        } else
-          is.readPixels(palette, palSize, serverpf.bpp / 8,
-                        serverpf.bigEndian);
+        pd.readPalette(is, palSize);
         break;
       case rfbTightFilterGradient:
         useGradient = true;
@@ -238,12 +194,9 @@ public class TightDecoder extends Decoder {
       }
     }
 
-    int bppp = bpp;
-    if (palSize != 0) {
+    int bppp = pd.dataBpp;
+    if (palSize != 0)
       bppp = (palSize <= 2) ? 1 : 8;
-    } else if (cutZeros) {
-      bppp = 24;
-    }
 
     // Determine if the data should be decompressed or just copied.
     int rowSize = (r.width() * bppp + 7) / 8;
@@ -270,154 +223,18 @@ public class TightDecoder extends Decoder {
       }
     }
 
-    int srcPtr = 0;
-
     if (palSize == 0) {
       // Truecolor data.
-      if (useGradient) {
-        if (cutZeros) {
-          filterGradient24(decodebuf, (int[])buf, stride[0], r);
-        } else if (bpp == 16) {
-          filterGradient16(decodebuf, (short[])buf, stride[0], r);
-        } else {
-          // We should never get here
-          throw new ErrorException("Unsupported pixel type");
-        }
-      } else {
-        // Copy
-        if (cutZeros) {
-          serverpf.bufferFromRGB((int[])buf, r.tl.x, r.tl.y, stride[0],
-                                 decodebuf, w, h);
-        } else if (buf instanceof byte[]) {
-          while (h > 0) {
-            System.arraycopy(decodebuf, srcPtr, (byte[])buf, ptr, w);
-            ptr += stride[0];
-            srcPtr += w;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((short[])buf)[ptr++] = getShort(decodebuf, srcPtr);
-              srcPtr += 2;
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          // We should never get here
-          throw new ErrorException("Unsupported pixel type");
-        }
-      }
+      if (useGradient)
+        pd.filterGradient(decodebuf, buf, stride[0], r);
+      else
+        pd.copy(decodebuf, buf, stride[0], r);
+    } else if (palSize <= 2) {
+      // 2-color palette
+      pd.monoRect(decodebuf, buf, ptr, stride[0], w, h);
     } else {
-      // Indexed color
-      int x, bits;
-      if (palSize <= 2) {
-        // 2-color palette
-        int remainder = w % 8;
-        int w8 = w - remainder;
-        if (buf instanceof byte[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 7 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 6 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 5 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 4 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 3 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 2 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 1 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 7 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 6 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 5 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 4 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 3 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 2 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 1 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((short[])buf)[ptr++] = ((short[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 7 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 6 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 5 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 4 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 3 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 2 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 1 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((int[])buf)[ptr++] = ((int[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        }
-      } else {
-        // 256-color palette
-        if (buf instanceof byte[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((byte[])buf)[ptr++] = ((byte[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((short[])buf)[ptr++] = ((short[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((int[])buf)[ptr++] = ((int[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        }
-      }
+      // 256-color palette
+      pd.indexedRect(decodebuf, buf, ptr, stride[0], w, h);
     }
 
     handler.releaseRawPixels(r);
@@ -471,8 +288,8 @@ public class TightDecoder extends Decoder {
         } else {
           byte[] rgbBuf = new byte[r.width() * r.height() * 3];
           tjd.decompress(rgbBuf, 0, 0, r.width(), 0, r.height(), TJ.PF_RGB, 0);
-          pf.bufferFromRGB(data, r.tl.x, r.tl.y, stride[0], rgbBuf,
-                           r.width(), r.height());
+          pixelDecoder.fromRGB(rgbBuf, data, r.tl.x, r.tl.y, stride[0],
+                               r.width(), r.height());
         }
         handler.releaseRawPixels(r);
         return;
@@ -492,109 +309,406 @@ public class TightDecoder extends Decoder {
     jpeg.flush();
   }
 
-  /* NOTE: we support gradient encoding only for backward compatibility with
-     TightVNC 1.3.x.  It is decidedly non-optimal. */
+  // PixelDecoder and its subclasses contain the per-pixel decoding loops for
+  // each type of framebuffer pixel.  Each subclass operates on only one array
+  // type, so the framebuffer and the palette are cast once per rectangle
+  // rather than once per pixel.
+
+  abstract static class PixelDecoder {
 
-  private void filterGradient24(byte[] netbuf, int[] buf, int stride,
-                                Rect r) {
+    PixelDecoder(PixelFormat pf_, int dataBpp_) {
+      pf = pf_;
+      dataBpp = dataBpp_;
+    }
+
+    abstract void fill(InStream is, Object buf, int ptr, int stride, int w,
+                       int h);
+    abstract void readPalette(InStream is, int palSize);
+    abstract void copy(byte[] src, Object buf, int stride, Rect r);
+    abstract void monoRect(byte[] src, Object buf, int ptr, int stride, int w,
+                           int h);
+    abstract void indexedRect(byte[] src, Object buf, int ptr, int stride,
+                              int w, int h);
+
+    void filterGradient(byte[] src, Object buf, int stride, Rect r) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel type");
+    }
+
+    abstract void fromRGB(byte[] rgb, Object buf, int x, int y, int stride,
+                          int w, int h);
+
+    final PixelFormat pf;
+    // Bits per pixel of the truecolor data sent by the server
+    final int dataBpp;
+  }
 
-    int x, y, c;
-    int ptr = r.tl.y * stride + r.tl.x;
-    int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] pix = new int[3];
-    int[] est = new int[3];
+  static final class PixelDecoder8 extends PixelDecoder {
 
-    // Set up shortcut variables
-    int rectHeight = r.height();
-    int rectWidth = r.width();
+    PixelDecoder8(PixelFormat pf) { super(pf, 8); }
 
-    for (y = 0; y < rectHeight; y++) {
-      /* First pixel in a row */
-      for (c = 0; c < 3; c++) {
-        pix[c] = (netbuf[y * rectWidth * 3 + c] + prevRow[c]) & 0xff;
-        thisRow[c] = pix[c];
+    void fill(InStream is, Object buf_, int ptr, int stride, int w, int h) {
+      byte[] buf = (byte[])buf_;
+      byte pix = (byte)is.readU8();
+      while (h > 0) {
+        Arrays.fill(buf, ptr, ptr + w, pix);
+        ptr += stride;
+        h--;
       }
-      buf[ptr + y * stride] = serverpf.pixelFromRGB(pix[0], pix[1], pix[2],
-                                                    null);
+    }
+
+    void readPalette(InStream is, int palSize) {
+      is.readBytes(palette, 0, palSize);
+    }
+
+    void copy(byte[] src, Object buf_, int stride, Rect r) {
+      byte[] buf = (byte[])buf_;
+      int w = r.width(), h = r.height();
+      int ptr = r.tl.y * stride + r.tl.x, srcPtr = 0;
+      while (h > 0) {
+        System.arraycopy(src, srcPtr, buf, ptr, w);
+        ptr += stride;
+        srcPtr += w;
+        h--;
+      }
+    }
+
+    void monoRect(byte[] src, Object buf_, int ptr, int stride, int w,
+                  int h) {
+      byte[] buf = (byte[])buf_, pal = palette;
+      int remainder = w % 8, w8 = w - remainder, pad = stride - w;
+      int srcPtr = 0, bits;
+      while (h > 0) {
+        int endOfRow = ptr + w8;
+        while (ptr < endOfRow) {
+          bits = src[srcPtr++];
+          buf[ptr++] = pal[bits >> 7 & 1];
+          buf[ptr++] = pal[bits >> 6 & 1];
+          buf[ptr++] = pal[bits >> 5 & 1];
+          buf[ptr++] = pal[bits >> 4 & 1];
+          buf[ptr++] = pal[bits >> 3 & 1];
+          buf[ptr++] = pal[bits >> 2 & 1];
+          buf[ptr++] = pal[bits >> 1 & 1];
+          buf[ptr++] = pal[bits & 1];
+        }
+        if (remainder != 0) {
+          bits = src[srcPtr++];
+          for (int b = 7; b >= 8 - remainder; b--)
+            buf[ptr++] = pal[bits >> b & 1];
+        }
+        ptr += pad;
+        h--;
+      }
+    }
+
+    void indexedRect(byte[] src, Object buf_, int ptr, int stride, int w,
+                     int h) {
+      byte[] buf = (byte[])buf_, pal = palette;
+      int pad = stride - w, srcPtr = 0;
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow)
+          buf[ptr++] = pal[src[srcPtr++] & 0xff];
+        ptr += pad;
+        h--;
+      }
+    }
+
+    void fromRGB(byte[] rgb, Object buf, int x, int y, int stride, int w,
+                 int h) {
+      pf.bufferFromRGB((byte[])buf, x, y, stride, rgb, w, h);
+    }
 
-      /* Remaining pixels of a row */
-      for (x = 1; x < rectWidth; x++) {
+    private final byte[] palette = new byte[256];
+  }
+
+  static final class PixelDecoder16 extends PixelDecoder {
+
+    PixelDecoder16(PixelFormat pf) { super(pf, 16); }
+
+    void fill(InStream is, Object buf_, int ptr, int stride, int w, int h) {
+      short[] buf = (short[])buf_;
+      short pix = (short)is.readPixel(2, pf.bigEndian);
+      while (h > 0) {
+        Arrays.fill(buf, ptr, ptr + w, pix);
+        ptr += stride;
+        h--;
+      }
+    }
+
+    void readPalette(InStream is, int palSize) {
+      is.readPixels(palette, palSize, 2, pf.bigEndian);
+    }
+
+    void copy(byte[] src, Object buf_, int stride, Rect r) {
+      short[] buf = (short[])buf_;
+      int w = r.width(), h = r.height();
+      int ptr = r.tl.y * stride + r.tl.x, pad = stride - w, srcPtr = 0;
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow) {
+          buf[ptr++] = getShort(src, srcPtr);
+          srcPtr += 2;
+        }
+        ptr += pad;
+        h--;
+      }
+    }
+
+    void monoRect(byte[] src, Object buf_, int ptr, int stride, int w,
+                  int h) {
+      short[] buf = (short[])buf_, pal = palette;
+      int remainder = w % 8, w8 = w - remainder, pad = stride - w;
+      int srcPtr = 0, bits;
+      while (h > 0) {
+        int endOfRow = ptr + w8;
+        while (ptr < endOfRow) {
+          bits = src[srcPtr++];
+          buf[ptr++] = pal[bits >> 7 & 1];
+          buf[ptr++] = pal[bits >> 6 & 1];
+          buf[ptr++] = pal[bits >> 5 & 1];
+          buf[ptr++] = pal[bits >> 4 & 1];
+          buf[ptr++] = pal[bits >> 3 & 1];
+          buf[ptr++] = pal[bits >> 2 & 1];
+          buf[ptr++] = pal[bits >> 1 & 1];
+          buf[ptr++] = pal[bits & 1];
+        }
+        if (remainder != 0) {
+          bits = src[srcPtr++];
+          for (int b = 7; b >= 8 - remainder; b--)
+            buf[ptr++] = pal[bits >> b & 1];
+        }
+        ptr += pad;
+        h--;
+      }
+    }
+
+    void indexedRect(byte[] src, Object buf_, int ptr, int stride, int w,
+                     int h) {
+      short[] buf = (short[])buf_, pal = palette;
+      int pad = stride - w, srcPtr = 0;
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow)
+          buf[ptr++] = pal[src[srcPtr++] & 0xff];
+        ptr += pad;
+        h--;
+      }
+    }
+
+    /* NOTE: we support gradient encoding only for backward compatibility with
+       TightVNC 1.3.x.  It is decidedly non-optimal. */
+
+    void filterGradient(byte[] src, Object buf_, int stride, Rect r) {
+      short[] buf = (short[])buf_;
+      int x, y, c, p;
+      int ptr = r.tl.y * stride + r.tl.x;
+      int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
+      int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
+      int[] pix = new int[3];
+      int[] est = new int[3];
+      int[] max = new int[] { pf.redMax, pf.greenMax, pf.blueMax };
+      int[] shift = new int[] { pf.redShift, pf.greenShift, pf.blueShift };
+
+      // Set up shortcut variables
+      int rectHeight = r.height();
+      int rectWidth = r.width();
+
+      for (y = 0; y < rectHeight; y++) {
+        /* First pixel in a row */
+        p = getShort(src, y * rectWidth * 2);
         for (c = 0; c < 3; c++) {
-          est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
-          if (est[c] > 0xFF) {
-            est[c] = 0xFF;
-          } else if (est[c] < 0) {
-            est[c] = 0;
+          pix[c] = ((p >> shift[c]) + prevRow[c]) & max[c];
+          thisRow[c] = pix[c];
+        }
+        buf[ptr + y * stride] = (short)((pix[0] << shift[0]) |
+                                        (pix[1] << shift[1]) |
+                                        (pix[2] << shift[2]));
+
+        /* Remaining pixels of a row */
+        for (x = 1; x < rectWidth; x++) {
+          p = getShort(src, (y * rectWidth + x) * 2);
+          for (c = 0; c < 3; c++) {
+            est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
+            if (est[c] > max[c]) {
+              est[c] = max[c];
+            } else if (est[c] < 0) {
+              est[c] = 0;
+            }
+            pix[c] = ((p >> shift[c]) + est[c]) & max[c];
+            thisRow[x * 3 + c] = pix[c];
           }
-          pix[c] = (netbuf[(y * rectWidth + x) * 3 + c] + est[c]) & 0xff;
-          thisRow[x * 3 + c] = pix[c];
+          buf[ptr + y * stride + x] = (short)((pix[0] << shift[0]) |
+                                              (pix[1] << shift[1]) |
+                                              (pix[2] << shift[2]));
         }
-        buf[ptr + y * stride + x] = serverpf.pixelFromRGB(pix[0], pix[1],
-                                                          pix[2], null);
+
+        System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
       }
+    }
 
-      System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
+    void fromRGB(byte[] rgb, Object buf, int x, int y, int stride, int w,
+                 int h) {
+      pf.bufferFromRGB((short[])buf, x, y, stride, rgb, w, h);
     }
+
+    private final short[] palette = new short[256];
   }
 
-  private void filterGradient16(byte[] netbuf, short[] buf, int stride,
-                                Rect r) {
-
-    int x, y, c, p;
-    int ptr = r.tl.y * stride + r.tl.x;
-    int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] pix = new int[3];
-    int[] est = new int[3];
-    int[] max = new int[] { serverpf.redMax, serverpf.greenMax,
-                            serverpf.blueMax };
-    int[] shift = new int[] { serverpf.redShift, serverpf.greenShift,
-                              serverpf.blueShift };
-
-    // Set up shortcut variables
-    int rectHeight = r.height();
-    int rectWidth = r.width();
-
-    for (y = 0; y < rectHeight; y++) {
-      /* First pixel in a row */
-      p = getShort(netbuf, y * rectWidth * 2);
-      for (c = 0; c < 3; c++) {
-        pix[c] = ((p >> shift[c]) + prevRow[c]) & max[c];
-        thisRow[c] = pix[c];
+  static class PixelDecoder32 extends PixelDecoder {
+
+    PixelDecoder32(PixelFormat pf) { this(pf, 32); }
+
+    PixelDecoder32(PixelFormat pf, int dataBpp) { super(pf, dataBpp); }
+
+    void fill(InStream is, Object buf, int ptr, int stride, int w, int h) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel type");
+    }
+
+    void readPalette(InStream is, int palSize) {
+      is.readPixels(palette, palSize, 4, pf.bigEndian);
+    }
+
+    void copy(byte[] src, Object buf, int stride, Rect r) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel type");
+    }
+
+    final void monoRect(byte[] src, Object buf_, int ptr, int stride, int w,
+                        int h) {
+      int[] buf = (int[])buf_, pal = palette;
+      int remainder = w % 8, w8 = w - remainder, pad = stride - w;
+      int srcPtr = 0, bits;
+      while (h > 0) {
+        int endOfRow = ptr + w8;
+        while (ptr < endOfRow) {
+          bits = src[srcPtr++];
+          buf[ptr++] = pal[bits >> 7 & 1];
+          buf[ptr++] = pal[bits >> 6 & 1];
+          buf[ptr++] = pal[bits >> 5 & 1];
+          buf[ptr++] = pal[bits >> 4 & 1];
+          buf[ptr++] = pal[bits >> 3 & 1];
+          buf[ptr++] = pal[bits >> 2 & 1];
+          buf[ptr++] = pal[bits >> 1 & 1];
+          buf[ptr++] = pal[bits & 1];
+        }
+        if (remainder != 0) {
+          bits = src[srcPtr++];
+          for (int b = 7; b >= 8 - remainder; b--)
+            buf[ptr++] = pal[bits >> b & 1];
+        }
+        ptr += pad;
+        h--;
+      }
+    }
+
+    final void indexedRect(byte[] src, Object buf_, int ptr, int stride,
+                           int w, int h) {
+      int[] buf = (int[])buf_, pal = palette;
+      int pad = stride - w, srcPtr = 0;
+      while (h > 0) {
+        int endOfRow = ptr + w;
+        while (ptr < endOfRow)
+          buf[ptr++] = pal[src[srcPtr++] & 0xff];
+        ptr += pad;
+        h--;
+      }
+    }
+
+    final void fromRGB(byte[] rgb, Object buf, int x, int y, int stride,
+                       int w, int h) {
+      pf.bufferFromRGB((int[])buf, x, y, stride, rgb, w, h);
+    }
+
+    final int[] palette = new int[256];
+  }
+
+  // 32-bit RGB888 pixels are sent by the server as 24-bit RGB data
+  // ("cutZeros".)
+  static final class PixelDecoder24 extends PixelDecoder32 {
+
+    PixelDecoder24(PixelFormat pf) {
+      super(pf, 24);
+      tightPalette = new byte[256 * 3];
+    }
+
+    void fill(InStream is, Object buf_, int ptr, int stride, int w, int h) {
+      int[] buf = (int[])buf_;
+      byte[] bytebuf = new byte[3];
+      is.readBytes(bytebuf, 0, 3);
+      int pix = (bytebuf[0] & 0xff) << pf.redShift |
+                (bytebuf[1] & 0xff) << pf.greenShift |
+                (bytebuf[2] & 0xff) << pf.blueShift | (0xff << 24);
+      while (h > 0) {
+        Arrays.fill(buf, ptr, ptr + w, pix);
+        ptr += stride;
+        h--;
       }
-      buf[ptr + y * stride] = (short)((pix[0] << shift[0]) |
-                                      (pix[1] << shift[1]) |
-                                      (pix[2] << shift[2]));
+    }
+
+    void readPalette(InStream is, int palSize) {
+      is.readBytes(tightPalette, 0, palSize * 3);
+      pf.bufferFromRGB(palette, 0, tightPalette, 0, palSize);
+    }
+
+    void copy(byte[] src, Object buf, int stride, Rect r) {
+      pf.bufferFromRGB((int[])buf, r.tl.x, r.tl.y, stride, src, r.width(),
+                       r.height());
+    }
 
-      /* Remaining pixels of a row */
-      for (x = 1; x < rectWidth; x++) {
-        p = getShort(netbuf, (y * rectWidth + x) * 2);
+    /* NOTE: we support gradient encoding only for backward compatibility with
+       TightVNC 1.3.x.  It is decidedly non-optimal. */
+
+    void filterGradient(byte[] src, Object buf_, int stride, Rect r) {
+      int[] buf = (int[])buf_;
+      int x, y, c;
+      int ptr = r.tl.y * stride + r.tl.x;
+      int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
+      int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
+      int[] pix = new int[3];
+      int[] est = new int[3];
+
+      // Set up shortcut variables
+      int rectHeight = r.height();
+      int rectWidth = r.width();
+
+      for (y = 0; y < rectHeight; y++) {
+        /* First pixel in a row */
         for (c = 0; c < 3; c++) {
-          est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
-          if (est[c] > max[c]) {
-            est[c] = max[c];
-          } else if (est[c] < 0) {
-            est[c] = 0;
+          pix[c] = (src[y * rectWidth * 3 + c] + prevRow[c]) & 0xff;
+          thisRow[c] = pix[c];
+        }
+        buf[ptr + y * stride] = pf.pixelFromRGB(pix[0], pix[1], pix[2], null);
+
+        /* Remaining pixels of a row */
+        for (x = 1; x < rectWidth; x++) {
+          for (c = 0; c < 3; c++) {
+            est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
+            if (est[c] > 0xFF) {
+              est[c] = 0xFF;
+            } else if (est[c] < 0) {
+              est[c] = 0;
+            }
+            pix[c] = (src[(y * rectWidth + x) * 3 + c] + est[c]) & 0xff;
+            thisRow[x * 3 + c] = pix[c];
           }
-          pix[c] = ((p >> shift[c]) + est[c]) & max[c];
-          thisRow[x * 3 + c] = pix[c];
+          buf[ptr + y * stride + x] = pf.pixelFromRGB(pix[0], pix[1], pix[2],
+                                                      null);
         }
-        buf[ptr + y * stride + x] = (short)((pix[0] << shift[0]) |
-                                            (pix[1] << shift[1]) |
-                                            (pix[2] << shift[2]));
-      }
 
-      System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
+        System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
+      }
     }
+
+    private final byte[] tightPalette;
   }
 
   private CMsgReader reader;
   private Inflater[] inflater;
   private PixelFormat serverpf;
   private TJDecompressor tjd;
-  private Object palette;
-  private byte[] tightPalette;
+  private PixelDecoder pixelDecoder;
   private byte[] netbuf;
   private int netbufSize;
   private byte[] decodebuf;
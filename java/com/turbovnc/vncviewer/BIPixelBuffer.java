@@ -33,14 +33,28 @@ public class BIPixelBuffer extends PlatformPixelBuffer
     clip = new Rectangle();
   }
 
+  // setPF() changes the pixel format of the image, converting the existing
+  // image data to the new format.
   public void setPF(PixelFormat pf) {
     super.setPF(pf);
+    BufferedImage oldImage = image;
     createImage(width(), height());
+    if (oldImage != null && image != null) {
+      Graphics2D graphics = image.createGraphics();
+      graphics.drawImage(oldImage, 0, 0, null);
+      graphics.dispose();
+      oldImage.flush();
+    }
   }
 
   public void updateColourMap() {
     cm = new IndexColorModel(8, nColours, reds, greens, blues);
-    createImage(width_, height_);
+    // The existing pixels are colour map indices, so they remain valid with
+    // the new colour map.
+    if (image != null && cm.isCompatibleRaster(image.getRaster()))
+      image = new BufferedImage(cm, image.getRaster(), true, null);
+    else
+      createImage(width_, height_);
   }
 
   // resize() resizes the image, preserving the image data where possible.
@@ -50,7 +64,15 @@ public class BIPixelBuffer extends PlatformPixelBuffer
 
     width_ = w;
     height_ = h;
+    BufferedImage oldImage = image;
     createImage(w, h);
+    if (oldImage != null && image != null) {
+      int cw = Math.min(w, oldImage.getWidth());
+      int ch = Math.min(h, oldImage.getHeight());
+      image.getRaster().setDataElements(0, 0,
+        oldImage.getRaster().createChild(0, 0, cw, ch, 0, 0, null));
+      oldImage.flush();
+    }
   }
 
   private void createImage(int w, int h) {
@@ -92,6 +92,10 @@ public class CConn extends CConnection implements UserPasswdGetter,
     firstUpdate = true; pendingUpdate = false; continuousUpdates = false;
     forceNonincremental = true; supportsSyncFence = false;
     pressedKeys = new HashMap<Integer, Integer>();
+    metrics = new ViewerMetrics(this);
+    if (VncViewer.getBooleanProperty("turbovnc.latency", false))
+      latency = new LatencyTracker(metrics.pointerLatency,
+                                   metrics.keyLatency);
 
     setShared(opts.shared);
     upg = this;
@@ -145,17 +149,24 @@ public class CConn extends CConnection implements UserPasswdGetter,
         serverName = Hostname.getHost(opts.via);
       } else if (opts.via != null || opts.tunnel) {
         try {
-          Tunnel.createTunnel(opts);
-          port = Hostname.getPort(opts.serverName);
-          serverName = Hostname.getHost(opts.serverName);
+          sock = Tunnel.createTunnel(opts);
+          if (sock == null) {
+            port = Hostname.getPort(opts.serverName);
+            serverName = Hostname.getHost(opts.serverName);
+          }
         } catch (Exception e) {
           throw new ErrorException("Could not create SSH tunnel:\n" +
                                    e.getMessage());
         }
       }
 
-      sock = new TcpSocket(serverName, port);
-      vlog.info("connected to host " + serverName + " port " + port);
+      if (sock != null) {
+        vlog.info("connected to host " + sock.getPeerName() + " port " +
+                  sock.getPeerPort() + " through SSH tunnel");
+      } else {
+        sock = new TcpSocket(serverName, port);
+        vlog.info("connected to host " + serverName + " port " + port);
+      }
     }
 
     if (benchmark) {
@@ -163,10 +174,12 @@ public class CConn extends CConnection implements UserPasswdGetter,
       reader_ = new CMsgReaderV3(this, viewer.benchFile);
     } else {
       sock.inStream().setBlockCallback(this);
+      sock.inStream().setStallHistogram(metrics.readStall);
       setServerName(opts.serverName);
       setStreams(sock.inStream(), sock.outStream());
       initialiseProtocol();
     }
+    metrics.register();
   }
 
   // RFB thread
@@ -185,8 +198,17 @@ public class CConn extends CConnection implements UserPasswdGetter,
       if (disposeViewport)
         viewport.dispose();
     }
+    if (pointerTimer != null)
+      pointerTimer.stop();
+    if (giiTimer != null)
+      giiTimer.stop();
     releasePressedKeys();
     viewport = null;
+    if (latency != null) {
+      vlog.info("Pointer latency (us): " + metrics.pointerLatency.snapshot());
+      vlog.info("Key latency (us):     " + metrics.keyLatency.snapshot());
+    }
+    metrics.unregister();
   }
 
   // RFB thread: blockCallback() is called when reading from the socket would
@@ -310,6 +332,17 @@ public class CConn extends CConnection implements UserPasswdGetter,
     // Force a switch to our preferred format and encoding.
     formatChange = true;  encodingChange = true;
 
+    // From now on, all client-to-server messages, whether written by the EDT
+    // or by the RFB thread, are handed off to a dedicated sender thread, so
+    // neither thread blocks on a slow network.  The messages are sent in the
+    // order in which they were written, so an update request always reaches
+    // the server after any input events that were written before it.
+    if (!benchmark) {
+      outQueue = new QueuedOutStream(getOutStream(), SEND_QUEUE_SIZE,
+                                     "RFB sender");
+      writer().setOutStream(outQueue);
+    }
+
     // And kick off the update cycle
     if (!benchmark)
       requestNewUpdate();
@@ -335,8 +368,7 @@ public class CConn extends CConnection implements UserPasswdGetter,
     // This initial update request is a bit of a corner case, so we need to
     // help by setting the correct format here.
     assert(pendingPFChange);
-    desktop.setServerPF(pendingPF);
-    cp.setPF(pendingPF);
+    setServerPF(pendingPF);
     pendingPFChange = false;
 
     try {
@@ -469,6 +501,14 @@ public class CConn extends CConnection implements UserPasswdGetter,
   public void framebufferUpdateStart() {
     tUpdateStart = getTime();
     if (tStart < 0.) tStart = tUpdateStart;
+    if (!benchmark)
+      updateBytesStart = sock.inStream().getBytesRead();
+    if (FlightRecorder.enabled) {
+      updateEvent = FlightRecorder.recorder.beginUpdate();
+      updateRectsStart = decodeRect;
+    }
+    if (latency != null)
+      latency.updateStart();
 
     // Note: This might not be true if sync fences are supported.
     pendingUpdate = false;
@@ -519,13 +559,27 @@ public class CConn extends CConnection implements UserPasswdGetter,
     // displaying the last framebuffer update that used the old format, so
     // activate the new format.
     if (pendingPFChange) {
-      desktop.setServerPF(pendingPF);
-      cp.setPF(pendingPF);
+      setServerPF(pendingPF);
       pendingPFChange = false;
     }
 
-    tUpdate += getTime() - tUpdateStart;
+    double tUpdateEnd = getTime();
+    tUpdate += tUpdateEnd - tUpdateStart;
     updates++;
+    metrics.updateLatency.record((long)((tUpdateEnd - tUpdateStart) * 1.0e6));
+    long updateBytes = 0;
+    if (!benchmark) {
+      updateBytes = (long)(sock.inStream().getBytesRead() - updateBytesStart);
+      metrics.updateBytes.record(updateBytes);
+    }
+    if (latency != null)
+      latency.updateEnd();
+    if (FlightRecorder.enabled) {
+      FlightRecorder.recorder.endUpdate(updateEvent,
+                                        (int)(decodeRect - updateRectsStart),
+                                        updateBytes);
+      updateEvent = null;
+    }
     tElapsed = getTime() - tStart;
 
     if (tElapsed > (double)VncViewer.profileInt.getValue() && !benchmark) {
@@ -571,6 +625,14 @@ public class CConn extends CConnection implements UserPasswdGetter,
 
         str = String.format("%.0f", (double)decodeRect / (double)updates);
         profileDialog.rpuDecodeVal.setText(str);
+
+        str = String.format("%d / %d", cursorCacheHits, cursorCacheMisses);
+        profileDialog.cursorCacheVal.setText(str);
+        str = String.format("%d / %d", pointerEventsSent,
+                            pointerEventsDropped);
+        profileDialog.pointerEventsVal.setText(str);
+        str = String.format("%d / %d", blits, framesCoalesced);
+        profileDialog.framesVal.setText(str);
       }
       if (profileDialog.isVisible() || alwaysProfile) {
         System.out.format("-------------------------------------------------------------------------------\n");
@@ -598,11 +660,20 @@ public class CConn extends CConnection implements UserPasswdGetter,
         System.out.format("              Total = %.3f ms  +  Overhead = %.3f ms\n",
                           tUpdate / (double)updates * 1000.,
                           (tElapsed - tUpdate) / (double)updates * 1000.);
+        System.out.format("Cursor cache:  %d hits,  %d misses\n",
+                          cursorCacheHits, cursorCacheMisses);
+        System.out.format("Pointer events:  %d sent,  %d coalesced\n",
+                          pointerEventsSent, pointerEventsDropped);
+        System.out.format("Frames:  %d drawn,  %d coalesced\n",
+                          blits, framesCoalesced);
       }
       tUpdate = tDecode = tBlit = 0.0;
       sock.inStream().resetReadTime();
       sock.inStream().resetBytesRead();
       decodePixels = decodeRect = blitPixels = blits = updates = 0;
+      cursorCacheHits = cursorCacheMisses = 0;
+      pointerEventsSent = pointerEventsDropped = 0;
+      framesCoalesced = 0;
       tStart = getTime();
     }
   }
@@ -676,7 +747,8 @@ public class CConn extends CConnection implements UserPasswdGetter,
       tRead = viewer.benchFile.getReadTime();
     else
       tRead = sock.inStream().getReadTime();
-    tDecode += getTime() - tDecodeStart - (tRead - tReadOld);
+    tDecodeRect = getTime() - tDecodeStart - (tRead - tReadOld);
+    tDecode += tDecodeRect;
   }
 
   public void beginRect(Rect r, int encoding) {
@@ -697,6 +769,11 @@ public class CConn extends CConnection implements UserPasswdGetter,
       sock.inStream().stopTiming();
     decodePixels += r.width() * r.height();
     decodeRect++;
+    metrics.rectSize.record(r.area());
+    if (latency != null)
+      latency.rect(r);
+    if (encoding != Encodings.encodingCopyRect)
+      metrics.recordDecodeTime(encoding, (long)(tDecodeRect * 1.0e6));
   }
 
   public void fillRect(Rect r, int p) {
@@ -749,8 +826,11 @@ public class CConn extends CConnection implements UserPasswdGetter,
         if (cp.supportsContinuousUpdates) {
           vlog.info("Enabling continuous updates");
           continuousUpdates = true;
-          writer().writeEnableContinuousUpdates(true, 0, 0, cp.width,
-                                                cp.height);
+          if (!updatesSuspended) {
+            Rect r = getUpdateRect();
+            writer().writeEnableContinuousUpdates(true, r.tl.x, r.tl.y,
+                                                  r.width(), r.height());
+          }
         }
       }
     } else {
@@ -762,11 +842,18 @@ public class CConn extends CConnection implements UserPasswdGetter,
       if (pf.is888() && VncViewer.forceAlpha)
         pf.alpha = true;
 
-      desktop.setServerPF(pf);
-      cp.setPF(pf);
+      setServerPF(pf);
     }
   }
 
+  // RFB thread: setServerPF() activates a new pixel format for both the
+  // framebuffer and the decoders.
+  private void setServerPF(PixelFormat pf) {
+    desktop.setServerPF(pf);
+    cp.setPF(pf);
+    reader_.setPF(pf);
+  }
+
   // RFB thread
   public void enableGII() {
     cp.supportsGII = true;
@@ -849,7 +936,70 @@ public class CConn extends CConnection implements UserPasswdGetter,
     }
 
     e.print();
-    writer().writeGIIEvent(dev, e);
+    queueGIIEvent(dev, e);
+  }
+
+  // Helper thread: GII events are queued per device and sent in a single
+  // injection message for each device.  If the sender thread is not
+  // backlogged, then the queue is flushed immediately.  Otherwise, events
+  // accumulate until the backlog clears, and an absolute valuator event
+  // replaces the previous queued event if it updated the same valuators.
+  // This prevents a pen tablet, which can generate hundreds of events per
+  // second, from flooding a slow link with stale positions.
+  private void queueGIIEvent(ExtInputDevice dev, ExtInputEvent e) {
+    synchronized(pendingGIIEvents) {
+      ArrayList<ExtInputEvent> events = pendingGIIEvents.get(dev);
+      if (events == null) {
+        events = new ArrayList<ExtInputEvent>();
+        pendingGIIEvents.put(dev, events);
+      }
+      ExtInputEvent last =
+        events.isEmpty() ? null : events.get(events.size() - 1);
+      if (last != null && e.type == giiTypes.giiValuatorAbsolute &&
+          last.type == e.type && last.firstValuator == e.firstValuator &&
+          last.numValuators == e.numValuators)
+        events.set(events.size() - 1, new ExtInputEvent(e));
+      else
+        events.add(new ExtInputEvent(e));
+    }
+
+    if (!sendBacklogged()) {
+      flushGIIEvents();
+      return;
+    }
+    synchronized(pendingGIIEvents) {
+      if (giiTimer == null) {
+        giiTimer = new javax.swing.Timer(POINTER_RETRY_MS,
+                                         new ActionListener() {
+          public void actionPerformed(ActionEvent e) {
+            if (shuttingDown || state() != RFBSTATE_NORMAL)
+              return;
+            if (sendBacklogged())
+              giiTimer.restart();
+            else
+              flushGIIEvents();
+          }
+        });
+        giiTimer.setRepeats(false);
+      }
+      if (!giiTimer.isRunning())
+        giiTimer.start();
+    }
+  }
+
+  // Helper thread or EDT
+  private void flushGIIEvents() {
+    synchronized(pendingGIIEvents) {
+      try {
+        for (Map.Entry<ExtInputDevice, ArrayList<ExtInputEvent>> entry :
+             pendingGIIEvents.entrySet()) {
+          if (!entry.getValue().isEmpty())
+            writer().writeGIIEvents(entry.getKey(), entry.getValue());
+        }
+      } finally {
+        pendingGIIEvents.clear();
+      }
+    }
   }
 
   // RFB thread
@@ -857,8 +1007,11 @@ public class CConn extends CConnection implements UserPasswdGetter,
     if (desktop == null)
       return;
 
-    if (continuousUpdates)
-      writer().writeEnableContinuousUpdates(true, 0, 0, cp.width, cp.height);
+    if (continuousUpdates && !updatesSuspended) {
+      Rect r = getUpdateRect();
+      writer().writeEnableContinuousUpdates(true, r.tl.x, r.tl.y, r.width(),
+                                            r.height());
+    }
 
     if ((cp.width == 0) && (cp.height == 0))
       return;
@@ -958,6 +1111,7 @@ public class CConn extends CConnection implements UserPasswdGetter,
       viewport.dispose();
     }
     viewport = new Viewport(this);
+    suspendUpdates(false);
     // When in Lion full-screen mode, we need to create the viewport as if
     // full-screen mode was disabled.
     boolean fullScreenWindow = opts.fullScreen && !viewport.lionFSSupported();
@@ -1276,8 +1430,19 @@ public class CConn extends CConnection implements UserPasswdGetter,
   }
 
   // RFB thread: requestNewUpdate() requests an update from the server, having
-  // set the format and encoding appropriately.
+  // set the format and encoding appropriately.  The writer is corked so that
+  // any fence, pixel format, and encoding messages are sent along with the
+  // update request in one write.
   private void requestNewUpdate() {
+    writer().cork();
+    try {
+      writeUpdateRequest();
+    } finally {
+      writer().uncork();
+    }
+  }
+
+  private void writeUpdateRequest() {
     if (formatChange) {
       PixelFormat pf;
 
@@ -1328,15 +1493,148 @@ public class CConn extends CConnection implements UserPasswdGetter,
 
     checkEncodings();
 
+    if (updatesSuspended && !forceNonincremental)
+      return;
+
     if (forceNonincremental || !continuousUpdates) {
       pendingUpdate = true;
-      writer().writeFramebufferUpdateRequest(new Rect(0, 0, cp.width, cp.height),
+      writer().writeFramebufferUpdateRequest(getUpdateRect(),
                                              !formatChange && !forceNonincremental);
     }
 
     forceNonincremental = false;
   }
 
+  // EDT: suspendUpdates() is called when the viewport is iconified or
+  // restored.  While the viewport is iconified, there is no reason to
+  // receive, decode, and draw framebuffer updates, so continuous updates are
+  // disabled, and the RFB thread stops requesting updates.  The server
+  // continues to track which parts of the framebuffer have changed, so a
+  // single incremental update request brings the framebuffer up to date when
+  // the viewport is restored.  Setting the turbovnc.suspend system property
+  // to 0 disables this feature.
+  void suspendUpdates(boolean suspend) {
+    if (suspend == updatesSuspended)
+      return;
+    if (suspend && !VncViewer.getBooleanProperty("turbovnc.suspend", true))
+      return;
+    updatesSuspended = suspend;
+    if (state() != RFBSTATE_NORMAL || shuttingDown || benchmark)
+      return;
+
+    vlog.debug((suspend ? "Suspending" : "Resuming") + " updates");
+    Rect r = getUpdateRect();
+    writer().cork();
+    try {
+      if (continuousUpdates)
+        writer().writeEnableContinuousUpdates(!suspend, r.tl.x, r.tl.y,
+                                              r.width(), r.height());
+      // pendingUpdate belongs to the RFB thread, so it is not set here.  An
+      // extra outstanding update request is harmless.
+      if (!suspend)
+        writer().writeFramebufferUpdateRequest(r, true);
+    } catch (Exception e) {
+      if (!shuttingDown) {
+        vlog.error("Error " + (suspend ? "suspending" : "resuming") +
+                   " updates:");
+        vlog.error("  " + e.toString());
+      }
+    } finally {
+      writer().uncork();
+    }
+    // The viewport may have been scrolled or resized while it was iconified.
+    if (!suspend)
+      visibleAreaChanged();
+  }
+
+  // RFB thread or EDT: getUpdateRect() returns the area of the remote desktop
+  // for which updates are requested.  The rest of the framebuffer is stale,
+  // and it is refreshed by visibleAreaChanged() when it becomes visible.
+  private synchronized Rect getUpdateRect() {
+    Rect fb = new Rect(0, 0, cp.width, cp.height);
+    if (updateRect == null)
+      return fb;
+    Rect r = updateRect.intersect(fb);
+    return r.isEmpty() ? fb : r;
+  }
+
+  // EDT: visibleAreaChanged() is called whenever the viewport is scrolled or
+  // resized.  If the visible area of the remote desktop (plus UpdateMargin)
+  // has changed, then updates are requested for the new area, and the parts
+  // of it that were previously hidden are refreshed.
+  void visibleAreaChanged() {
+    if (state() != RFBSTATE_NORMAL || shuttingDown || benchmark ||
+        updatesSuspended)
+      return;
+
+    Rect newRect = getVisibleRect(), oldRect;
+    synchronized(this) {
+      oldRect = getUpdateRect();
+      if (newRect.equals(oldRect))
+        return;
+      updateRect = newRect;
+    }
+
+    writer().cork();
+    try {
+      if (continuousUpdates)
+        writer().writeEnableContinuousUpdates(true, newRect.tl.x,
+                                              newRect.tl.y, newRect.width(),
+                                              newRect.height());
+      // As in suspendUpdates(), pendingUpdate is left to the RFB thread.
+      for (Rect r : subtract(newRect, oldRect))
+        writer().writeFramebufferUpdateRequest(r, false);
+    } catch (Exception e) {
+      if (!shuttingDown) {
+        vlog.error("Error requesting update for visible area:");
+        vlog.error("  " + e.toString());
+      }
+    } finally {
+      writer().uncork();
+    }
+  }
+
+  // EDT: getVisibleRect() returns the area of the remote desktop that is
+  // visible in the viewport, expanded by UpdateMargin pixels on each side.
+  private Rect getVisibleRect() {
+    Rect fb = new Rect(0, 0, cp.width, cp.height);
+    int margin = VncViewer.updateMargin.getValue();
+    if (margin < 0 || viewport == null || desktop == null)
+      return fb;
+    Rectangle view = viewport.sp.getViewport().getViewRect();
+    if (view.isEmpty())
+      return fb;
+    double sx = desktop.scaleWidthRatio, sy = desktop.scaleHeightRatio;
+    Rect r = new Rect((int)Math.floor(view.x / sx) - margin,
+                      (int)Math.floor(view.y / sy) - margin,
+                      (int)Math.ceil((view.x + view.width) / sx) + margin,
+                      (int)Math.ceil((view.y + view.height) / sy) + margin);
+    r = r.intersect(fb);
+    return r.isEmpty() ? fb : r;
+  }
+
+  // subtract() returns up to four rectangles that cover the parts of r that
+  // lie outside of clip.
+  static ArrayList<Rect> subtract(Rect r, Rect clip) {
+    ArrayList<Rect> rects = new ArrayList<Rect>();
+    if (!r.overlaps(clip)) {
+      rects.add(r);
+      return rects;
+    }
+    int y1 = Math.max(r.tl.y, clip.tl.y), y2 = Math.min(r.br.y, clip.br.y);
+    Rect[] strips = {
+      new Rect(r.tl.x, r.tl.y, r.br.x, clip.tl.y),
+      new Rect(r.tl.x, clip.br.y, r.br.x, r.br.y),
+      new Rect(r.tl.x, y1, clip.tl.x, y2),
+      new Rect(clip.br.x, y1, r.br.x, y2)
+    };
+    for (Rect strip : strips) {
+      if (!strip.isEmpty())
+        rects.add(strip);
+    }
+    return rects;
+  }
+
 
   ////////////////////////////////////////////////////////////////////
   // The following methods are all called from the EDT.
@@ -1347,8 +1645,22 @@ public class CConn extends CConnection implements UserPasswdGetter,
   public void close(boolean disposeViewport) {
     deleteWindow(disposeViewport);
     shuttingDown = true;
-    if (sock != null)
-      sock.shutdown();
+    closeSocket();
+  }
+
+  // closeSocket() stops the sender thread and shuts down the socket (which,
+  // for an SSH tunnel, also releases the SSH session.)  It is also called
+  // from the RFB thread when the connection fails.
+  void closeSocket() {
+    if (outQueue != null)
+      outQueue.close();
+    if (sock != null && !sock.isShutdown()) {
+      try {
+        sock.shutdown();
+      } catch (Exception e) {
+        vlog.debug("Could not shut down socket: " + e.getMessage());
+      }
+    }
   }
 
   // Menu callbacks.  These are guaranteed only to be called after serverInit()
@@ -1715,10 +2027,38 @@ public class CConn extends CConnection implements UserPasswdGetter,
     writer().writeClientCutText(str, len);
   }
 
+  // EDT: corkWriter() defers flushing messages written by the EDT until the
+  // current batch of AWT events has been dispatched, so that bursts of input
+  // events (such as modifier keys followed by a key, or the two pointer events
+  // generated by each wheel click) are sent with one write.  A lone event is
+  // still sent as soon as its event handler returns.
+  void corkWriter() {
+    if (writerCorked)
+      return;
+    writer().cork();
+    writerCorked = true;
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        writerCorked = false;
+        try {
+          writer().uncork();
+        } catch (Exception e) {
+          if (!shuttingDown) {
+            vlog.error("Error writing input events:");
+            vlog.error("  " + e.toString());
+          }
+        }
+      }
+    });
+  }
+
   // EDT
   public void writeKeyEvent(int keysym, boolean down) {
     if (state() != RFBSTATE_NORMAL || shuttingDown || benchmark)
       return;
+    corkWriter();
+    if (latency != null && down)
+      latency.keyEvent();
     try {
       writer().writeKeyEvent(keysym, down);
     } catch (Exception e) {
@@ -2226,16 +2566,71 @@ public class CConn extends CConnection implements UserPasswdGetter,
       ev.translatePoint(-dx, -dy);
     }
 
+    writePointerEvent(ev.getX(), ev.getY(), buttonMask);
+  }
+
+  // EDT: Pointer motion events are coalesced, so that only the most recent
+  // position is sent, if they exceed MaxPointerRate or if the sender thread
+  // is backlogged.  Otherwise, over a slow link, the remote pointer
+  // can lag seconds behind the local pointer during a drag.  Button
+  // transitions are always sent immediately.
+  private void writePointerEvent(int x, int y, int mask) {
+    long now = System.nanoTime();
+
+    if (mask == lastPointerMask) {
+      int maxRate = VncViewer.maxPointerRate.getValue();
+      long interval = maxRate > 0 ? 1000000000L / maxRate : 0;
+      if (now - lastPointerTime < interval || sendBacklogged()) {
+        if (pointerPending)
+          pointerEventsDropped++;
+        pointerPending = true;
+        pendingPointerX = x;  pendingPointerY = y;
+        if (pointerTimer == null) {
+          pointerTimer = new javax.swing.Timer(0, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+              if (pointerPending && !shuttingDown &&
+                  state() == RFBSTATE_NORMAL) {
+                pointerPending = false;
+                writePointerEvent(pendingPointerX, pendingPointerY,
+                                  lastPointerMask);
+              }
+            }
+          });
+          pointerTimer.setRepeats(false);
+        }
+        pointerTimer.setInitialDelay(
+          (int)Math.max((lastPointerTime + interval - now) / 1000000L,
+                        POINTER_RETRY_MS));
+        pointerTimer.restart();
+        return;
+      }
+    } else if (pointerPending) {
+      pointerEventsDropped++;
+      pointerPending = false;
+    }
+
+    if (latency != null)
+      latency.pointerEvent(x, y);
+    corkWriter();
     try {
-      writer().writePointerEvent(new Point(ev.getX(), ev.getY()), buttonMask);
+      writer().writePointerEvent(new Point(x, y), mask);
     } catch (Exception e) {
       if (!shuttingDown) {
         vlog.error("Error writing pointer event:");
         vlog.error("  " + e.toString());
       }
     }
+    lastPointerMask = mask;
+    lastPointerTime = now;
+    pointerEventsSent++;
   }
 
+  // sendBacklogged() returns true if previously written messages are still
+  // waiting to be sent by the sender thread.  This is called from the EDT, so
+  // it must not touch the socket or the sender thread's FdOutStream.
+  boolean sendBacklogged() {
+    return outQueue.backlogged();
+  }
 
   // EDT
   public void writeWheelEvent(MouseWheelEvent ev) {
@@ -2257,6 +2652,11 @@ public class CConn extends CConnection implements UserPasswdGetter,
       int dy = (int)Math.floor(viewport.dy / desktop.scaleHeightRatio);
       ev.translatePoint(-dx, -dy);
     }
+    if (pointerPending) {
+      pointerEventsDropped++;
+      pointerPending = false;
+    }
+    corkWriter();
     for (int i = 0; i < Math.abs(clicks); i++) {
       x = ev.getX();
       y = ev.getY();
@@ -2323,6 +2723,19 @@ public class CConn extends CConnection implements UserPasswdGetter,
   Options opts;
 
   int buttonMask;  // EDT only
+  static final int POINTER_RETRY_MS = 5;
+  int lastPointerMask, pendingPointerX, pendingPointerY;  // EDT only
+  long lastPointerTime;  // EDT only
+  boolean pointerPending;  // EDT only
+  javax.swing.Timer pointerTimer;  // EDT only
+  boolean writerCorked;  // EDT only
+  static final int SEND_QUEUE_SIZE = 1048576;
+  private QueuedOutStream outQueue;
+  private final LinkedHashMap<ExtInputDevice, ArrayList<ExtInputEvent>>
+    pendingGIIEvents =
+      new LinkedHashMap<ExtInputDevice, ArrayList<ExtInputEvent>>();
+  private javax.swing.Timer giiTimer;
+  public long pointerEventsSent, pointerEventsDropped;
 
   private Socket sock;
 
@@ -2344,6 +2757,8 @@ public class CConn extends CConnection implements UserPasswdGetter,
 
   public boolean firstUpdate;
   private boolean pendingUpdate;
+  private Rect updateRect;
+  private volatile boolean updatesSuspended;
   private boolean continuousUpdates;
 
   private boolean forceNonincremental;
@@ -2358,8 +2773,14 @@ public class CConn extends CConnection implements UserPasswdGetter,
   GraphicsDevice primaryGD;
 
   public double tDecode, tBlit;
-  public long decodePixels, decodeRect, blitPixels, blits;
-  double tDecodeStart, tReadOld;
+  public long decodePixels, decodeRect, blitPixels, blits, framesCoalesced;
+  public long cursorCacheHits, cursorCacheMisses;
+  double tDecodeStart, tReadOld, tDecodeRect;
+  double updateBytesStart;
+  Object updateEvent;
+  long updateRectsStart;
+  ViewerMetrics metrics;
+  LatencyTracker latency;
   boolean benchmark;
 
   double tStart = -1.0, tElapsed, tUpdateStart, tUpdate;
@@ -0,0 +1,394 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+/* Known-answer tests and benchmark for the built-in SSH client's ciphers.
+   This checks the pure-Java Poly1305 implementation against the test vectors
+   in RFC 7539, checks chacha20-poly1305@openssh.com against the ChaCha20
+   block function test vectors in RFC 7539 (which the original ChaCha20
+   variant shares when the block counter and nonce are small), and checks
+   aes128-gcm@openssh.com and aes256-gcm@openssh.com against Test Cases 4 and
+   16 from "The Galois/Counter Mode of Operation (GCM)" (the authentication
+   tags differ from those in the paper, because the SSH packet length field is
+   used as additional authenticated data.)  It then reports the throughput
+   with which a stream of SSH packets is encrypted and decrypted using each
+   AEAD cipher and using AES-CTR with a separate HMAC. */
+
+package com.turbovnc.vncviewer;
+
+import java.util.*;
+
+import com.jcraft.jsch.AEADCipher;
+import com.jcraft.jsch.Cipher;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.MAC;
+import com.jcraft.jsch.jcraft.ChaCha20Poly1305;
+
+public class CipherTest {
+
+  // { key, message, tag }
+  static final String[][] POLY1305_VECTORS = {
+    // RFC 7539, Section 2.5.2
+    { "85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b",
+      "43727970746f6772617068696320466f72756d2052657365617263682047726f7570",
+      "a8061dc1305136c6c22b8baf0c0127a9" },
+    // RFC 7539, Appendix A.3, Test Vectors #1 and #5-#11
+    { "0000000000000000000000000000000000000000000000000000000000000000",
+      "0000000000000000000000000000000000000000000000000000000000000000" +
+      "0000000000000000000000000000000000000000000000000000000000000000",
+      "00000000000000000000000000000000" },
+    { "0200000000000000000000000000000000000000000000000000000000000000",
+      "ffffffffffffffffffffffffffffffff",
+      "03000000000000000000000000000000" },
+    { "02000000000000000000000000000000ffffffffffffffffffffffffffffffff",
+      "02000000000000000000000000000000",
+      "03000000000000000000000000000000" },
+    { "0100000000000000000000000000000000000000000000000000000000000000",
+      "ffffffffffffffffffffffffffffffff" +
+      "f0ffffffffffffffffffffffffffffff" +
+      "11000000000000000000000000000000",
+      "05000000000000000000000000000000" },
+    { "0100000000000000000000000000000000000000000000000000000000000000",
+      "ffffffffffffffffffffffffffffffff" +
+      "fbfefefefefefefefefefefefefefefe" +
+      "01010101010101010101010101010101",
+      "00000000000000000000000000000000" },
+    { "0200000000000000000000000000000000000000000000000000000000000000",
+      "fdffffffffffffffffffffffffffffff",
+      "faffffffffffffffffffffffffffffff" },
+    { "0100000000000000040000000000000000000000000000000000000000000000",
+      "e33594d7505e43b900000000000000003394d7505e4379cd0100000000000000" +
+      "0000000000000000000000000000000001000000000000000000000000000000",
+      "14000000000000005500000000000000" },
+    { "0100000000000000040000000000000000000000000000000000000000000000",
+      "e33594d7505e43b900000000000000003394d7505e4379cd0100000000000000" +
+      "00000000000000000000000000000000",
+      "13000000000000000000000000000000" }
+  };
+
+  // RFC 7539, Appendix A.1, Test Vectors #1, #2, and #5 (all-zero key)
+  static final String CHACHA20_BLOCK0 =
+    "76b8e0ada0f13d90405d6ae55386bd28bdd219b8a08ded1aa836efcc8b770dc7" +
+    "da41597c5157488d7724e03fb8d84a376a43b8f41518a11cc387b669b2ee6586";
+  static final String CHACHA20_BLOCK1 =
+    "9f07e7be5551387a98ba977c732d080dcb0f29a048e3656912c6533e32ee7aed" +
+    "29b721769ce64e43d57133b074d839d531ed1f28510afb45ace10a1f4b794d6f";
+  static final String CHACHA20_NONCE2_BLOCK0 =
+    "c2c64d378cd536374ae204b9ef933fcd1a8b2288b3dfa49672ab765b54ee27c7" +
+    "8a970e0e955c14f3a88e741b97c286f75f8fc299e8148362fa198a39531bed6d";
+
+  static final String GCM_IV = "cafebabefacedbaddecaf888";
+  static final String GCM_PLAINTEXT =
+    "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a72" +
+    "1c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b39";
+  // { name, key, first packet, second packet }  Each packet is the
+  // ciphertext followed by the tag.
+  static final String[][] GCM_VECTORS = {
+    { "aes128-gcm@openssh.com", "feffe9928665731c6d6a8f9467308308",
+      "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e" +
+      "21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091" +
+      "2fd134b2096ac8b5669ad4df3285610b",
+      "5c21c68aa9787c7294b2d7a47a6e8e4d8adafeea894bf504323d55f62afe5ba1" +
+      "18a028444d260b032d4936a7a62acedcb095f614fed4092166b3c89f" +
+      "41f86d684b6e353defd83d8b0f3eb282" },
+    { "aes256-gcm@openssh.com",
+      "feffe9928665731c6d6a8f9467308308feffe9928665731c6d6a8f9467308308",
+      "522dc1f099567d07f47f37a32a84427d643a8cdcbfe5c0c97598a2bd2555d1aa" +
+      "8cb08e48590dbb3da7b08b1056828838c5f61e6393ba7a0abcc9f662" +
+      "0975b467167f66b01b213ede6c7c3245",
+      "46446ebb3f662e2bc2c3b3306a49d8b172227f8aadbc2cbb429bf8f83863be0c" +
+      "01e49effabd136797d9e5813f35408172812c562f49719c09b9d6034" +
+      "da2f3a7c72df716a42a1b7857a28a6a2" }
+  };
+
+  // { cipher, MAC }  A null MAC indicates an AEAD cipher.
+  static final String[][] METHODS = {
+    { "aes128-ctr", "hmac-sha1" },
+    { "aes128-ctr", "hmac-sha2-256" },
+    { "aes256-ctr", "hmac-sha2-256" },
+    { "aes128-gcm@openssh.com", null },
+    { "aes256-gcm@openssh.com", null },
+    { "chacha20-poly1305@openssh.com", null }
+  };
+  static final int PACKET_SIZE = 32768;
+  static final int MAX_TAG_SIZE = 32;
+  static final int DATA_SIZE = 32 * 1024 * 1024;
+  static final int ITERATIONS = 3;
+
+  static byte[] hex(String s) {
+    byte[] b = new byte[s.length() / 2];
+    for (int i = 0; i < b.length; i++)
+      b[i] = (byte)Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+    return b;
+  }
+
+  static void check(String what, byte[] actual, int offset, byte[] expected)
+                    throws Exception {
+    if (!Arrays.equals(Arrays.copyOfRange(actual, offset,
+                                          offset + expected.length),
+                       expected))
+      throw new Exception(what + " does not match the test vector");
+  }
+
+  static Object newInstance(String name) throws Exception {
+    return Class.forName(JSch.getConfig(name)).getDeclaredConstructor()
+           .newInstance();
+  }
+
+  static AEADCipher newAEADCipher(String name, int mode, byte[] key,
+                                  byte[] iv) throws Exception {
+    AEADCipher cipher = (AEADCipher)newInstance(name);
+    cipher.init(mode, key, iv);
+    return cipher;
+  }
+
+  static void testPoly1305() throws Exception {
+    ChaCha20Poly1305.Poly1305 poly = new ChaCha20Poly1305.Poly1305();
+    byte[] tag = new byte[16];
+    for (int i = 0; i < POLY1305_VECTORS.length; i++) {
+      byte[] msg = hex(POLY1305_VECTORS[i][1]);
+      poly.init(hex(POLY1305_VECTORS[i][0]));
+      // Split the message in order to exercise the handling of multiple
+      // update() calls.
+      int split = (msg.length / 2) & ~15;
+      poly.update(msg, 0, split);
+      poly.update(msg, split, msg.length - split);
+      poly.doFinal(tag, 0);
+      check("Poly1305 tag " + i, tag, 0, hex(POLY1305_VECTORS[i][2]));
+    }
+    System.out.println("Poly1305: " + POLY1305_VECTORS.length +
+                       " RFC 7539 test vectors passed");
+  }
+
+  static void testChaCha20Poly1305() throws Exception {
+    String name = "chacha20-poly1305@openssh.com";
+    byte[] key = new byte[64];
+    byte[] block0 = hex(CHACHA20_BLOCK0);
+    AEADCipher enc = newAEADCipher(name, Cipher.ENCRYPT_MODE, key, null);
+    AEADCipher dec = newAEADCipher(name, Cipher.DECRYPT_MODE, key, null);
+
+    // With an all-zero key and a sequence number of 0, the length field is
+    // encrypted with block 0 of the header key stream, the payload is
+    // encrypted with block 1 of the main key stream, and the Poly1305 key is
+    // the first 32 bytes of block 0 of the main key stream.
+    int len = 68;
+    byte[] buf = new byte[len + enc.getTagSize()];
+    enc.encrypt(0, buf, len);
+    check("ChaCha20 length field", buf, 0, Arrays.copyOf(block0, 4));
+    check("ChaCha20 payload", buf, 4, hex(CHACHA20_BLOCK1));
+    ChaCha20Poly1305.Poly1305 poly = new ChaCha20Poly1305.Poly1305();
+    byte[] tag = new byte[16];
+    poly.init(Arrays.copyOf(block0, 32));
+    poly.update(buf, 0, len);
+    poly.doFinal(tag, 0);
+    check("ChaCha20-Poly1305 tag", buf, len, tag);
+
+    if (dec.getPacketLength(0, buf, 0) != 0)
+      throw new Exception("ChaCha20 length field was not decrypted");
+    dec.decrypt(0, buf, len);
+    check("ChaCha20-Poly1305 decryption", buf, 0, new byte[len]);
+
+    // The sequence number is the nonce.
+    byte[] block = hex(CHACHA20_NONCE2_BLOCK0);
+    Arrays.fill(buf, (byte)0);
+    enc.encrypt(2, buf, len);
+    check("ChaCha20 length field (sequence number 2)", buf, 0,
+          Arrays.copyOf(block, 4));
+    if (dec.getPacketLength(2, buf, 0) != 0)
+      throw new Exception("ChaCha20 length field was not decrypted");
+
+    buf[len - 1] ^= 1;
+    boolean accepted = true;
+    try {
+      dec.decrypt(2, buf, len);
+    } catch (Exception e) {
+      accepted = false;
+    }
+    if (accepted)
+      throw new Exception("Forged packet was accepted");
+
+    System.out.println(name + ": RFC 7539 test vectors passed");
+  }
+
+  static void testAESGCM() throws Exception {
+    byte[] iv = Arrays.copyOf(hex(GCM_IV), 16);
+    byte[] plaintext = hex(GCM_PLAINTEXT);
+    for (int i = 0; i < GCM_VECTORS.length; i++) {
+      String name = GCM_VECTORS[i][0];
+      byte[] key = hex(GCM_VECTORS[i][1]);
+      AEADCipher enc, dec;
+      try {
+        enc = newAEADCipher(name, Cipher.ENCRYPT_MODE, key, iv);
+        dec = newAEADCipher(name, Cipher.DECRYPT_MODE, key, iv);
+      } catch (Exception e) {
+        System.out.println(name + ": not available (" + e + ")");
+        continue;
+      }
+
+      int len = 4 + plaintext.length;
+      byte[][] packets = new byte[2][];
+      for (int p = 0; p < 2; p++) {
+        // Each packet uses the next invocation counter.
+        byte[] buf = new byte[len + enc.getTagSize()];
+        buf[3] = (byte)plaintext.length;
+        System.arraycopy(plaintext, 0, buf, 4, plaintext.length);
+        enc.encrypt(p, buf, len);
+        check(name + " packet " + p, buf, 4, hex(GCM_VECTORS[i][2 + p]));
+        packets[p] = buf;
+      }
+      for (int p = 0; p < 2; p++) {
+        if (dec.getPacketLength(p, packets[p], 0) != plaintext.length)
+          throw new Exception(name + " packet length is incorrect");
+        dec.decrypt(p, packets[p], len);
+        check(name + " decryption", packets[p], 4, plaintext);
+      }
+
+      enc.encrypt(2, packets[0], len);
+      packets[0][0] ^= 1;
+      boolean accepted = true;
+      try {
+        dec.decrypt(2, packets[0], len);
+      } catch (Exception e) {
+        accepted = false;
+      }
+      if (accepted)
+        throw new Exception("Forged packet was accepted");
+
+      System.out.println(name + ": GCM test vectors passed");
+    }
+  }
+
+  // Encrypts or decrypts SSH packets, as Session.encode() and Session.read()
+  // do.
+  abstract static class PacketCipher {
+    abstract int getTagSize();
+    abstract void encrypt(int seq, byte[] buf, int len) throws Exception;
+    abstract void decrypt(int seq, byte[] buf, int len) throws Exception;
+  }
+
+  static class AEADPacketCipher extends PacketCipher {
+    AEADPacketCipher(AEADCipher cipher_) { cipher = cipher_; }
+    int getTagSize() { return cipher.getTagSize(); }
+    void encrypt(int seq, byte[] buf, int len) throws Exception {
+      cipher.encrypt(seq, buf, len);
+    }
+    void decrypt(int seq, byte[] buf, int len) throws Exception {
+      cipher.getPacketLength(seq, buf, 0);
+      cipher.decrypt(seq, buf, len);
+    }
+    AEADCipher cipher;
+  }
+
+  static class MACPacketCipher extends PacketCipher {
+    MACPacketCipher(Cipher cipher_, MAC mac_) {
+      cipher = cipher_;  mac = mac_;
+      result = new byte[mac.getBlockSize()];
+    }
+    int getTagSize() { return mac.getBlockSize(); }
+    void encrypt(int seq, byte[] buf, int len) throws Exception {
+      mac.update(seq);
+      mac.update(buf, 0, len);
+      mac.doFinal(buf, len);
+      cipher.update(buf, 0, len, buf, 0);
+    }
+    void decrypt(int seq, byte[] buf, int len) throws Exception {
+      cipher.update(buf, 0, len, buf, 0);
+      mac.update(seq);
+      mac.update(buf, 0, len);
+      mac.doFinal(result, 0);
+      for (int i = 0; i < result.length; i++) {
+        if (result[i] != buf[len + i])
+          throw new Exception("MAC Error");
+      }
+    }
+    Cipher cipher;
+    MAC mac;
+    byte[] result;
+  }
+
+  static PacketCipher newPacketCipher(String[] method, int mode, byte[] key,
+                                      byte[] iv, byte[] macKey)
+                                      throws Exception {
+    Object cipher = newInstance(method[0]);
+    if (cipher instanceof AEADCipher) {
+      AEADCipher aead = (AEADCipher)cipher;
+      aead.init(mode, Arrays.copyOf(key, aead.getBlockSize()), iv);
+      return new AEADPacketCipher(aead);
+    }
+    Cipher c = (Cipher)cipher;
+    c.init(mode, Arrays.copyOf(key, c.getBlockSize()), iv);
+    MAC mac = (MAC)newInstance(method[1]);
+    mac.init(Arrays.copyOf(macKey, mac.getBlockSize()));
+    return new MACPacketCipher(c, mac);
+  }
+
+  static double mbps(long bytes, long ns) {
+    return (double)bytes * 1000. / (double)ns;
+  }
+
+  static void benchmark() throws Exception {
+    Random random = new Random(1);
+    byte[] key = new byte[64], iv = new byte[16], macKey = new byte[64];
+    random.nextBytes(key);  random.nextBytes(iv);  random.nextBytes(macKey);
+    int npackets = DATA_SIZE / PACKET_SIZE;
+    byte[][] packets = new byte[npackets][PACKET_SIZE + MAX_TAG_SIZE];
+    for (int i = 0; i < npackets; i++)
+      random.nextBytes(packets[i]);
+    byte[] first = packets[0].clone();
+
+    System.out.println();
+    System.out.println("Method                                       " +
+                       "Encrypt (MB/s)  Decrypt (MB/s)");
+    for (String[] method : METHODS) {
+      String name = method[0] + (method[1] != null ? " + " + method[1] : "");
+      long bestEncrypt = Long.MAX_VALUE, bestDecrypt = Long.MAX_VALUE;
+      try {
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+          PacketCipher enc =
+            newPacketCipher(method, Cipher.ENCRYPT_MODE, key, iv, macKey);
+          PacketCipher dec =
+            newPacketCipher(method, Cipher.DECRYPT_MODE, key, iv, macKey);
+          long start = System.nanoTime();
+          for (int i = 0; i < npackets; i++)
+            enc.encrypt(i, packets[i], PACKET_SIZE);
+          bestEncrypt = Math.min(bestEncrypt, System.nanoTime() - start);
+          start = System.nanoTime();
+          for (int i = 0; i < npackets; i++)
+            dec.decrypt(i, packets[i], PACKET_SIZE);
+          bestDecrypt = Math.min(bestDecrypt, System.nanoTime() - start);
+        }
+      } catch (Exception e) {
+        System.out.println(String.format("%-44s ", name) +
+                           "not available (" + e + ")");
+        continue;
+      }
+      if (!Arrays.equals(Arrays.copyOf(packets[0], PACKET_SIZE),
+                         Arrays.copyOf(first, PACKET_SIZE)))
+        throw new Exception(name + ": packets did not survive the round trip");
+      System.out.format("%-44s %-15.1f %.1f\n", name,
+                        mbps(DATA_SIZE, bestEncrypt),
+                        mbps(DATA_SIZE, bestDecrypt));
+    }
+  }
+
+  public static void main(String[] argv) throws Exception {
+    testPoly1305();
+    testChaCha20Poly1305();
+    testAESGCM();
+    benchmark();
+  }
+}
@@ -0,0 +1,171 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+/* Benchmark for the built-in SSH client's zlib compression implementations.
+   This compresses and decompresses a stream of SSH packets using both
+   com.jcraft.jsch.jcraft.Compression (pure Java, using JZlib) and
+   com.jcraft.jsch.juz.Compression (using java.util.zip), checks that the data
+   survive the round trip through every combination of the two, and reports
+   the throughput of each.  The packets contain either highly compressible
+   data (similar to Raw- or Hextile-encoded framebuffer updates of a typical
+   desktop) or incompressible data (similar to Tight- or JPEG-encoded
+   updates.) */
+
+package com.turbovnc.vncviewer;
+
+import java.util.*;
+
+import com.jcraft.jsch.Compression;
+
+public class CompressionTest {
+
+  static final String[] IMPLS = {
+    "com.jcraft.jsch.jcraft.Compression", "com.jcraft.jsch.juz.Compression"
+  };
+  static final String[] NAMES = { "JZlib", "java.util.zip" };
+  static final int PACKET_SIZE = 16384;
+  static final int HEADER_SIZE = 5;
+  static final int MARGIN = 64;
+  static final int LEVEL = 6;
+  static final int DATA_SIZE = 32 * 1024 * 1024;
+  static final int ITERATIONS = 3;
+
+  static byte[] makeCompressibleData(Random random) {
+    // 32-bit pixels consisting of solid-color runs, with occasional noise
+    byte[] data = new byte[DATA_SIZE];
+    int pixel = 0;
+    for (int i = 0; i < DATA_SIZE; i += 4) {
+      if (random.nextInt(64) == 0)
+        pixel = random.nextInt(8) * 0x202020;
+      int p = random.nextInt(32) == 0 ? random.nextInt() : pixel;
+      data[i] = (byte)p;  data[i + 1] = (byte)(p >> 8);
+      data[i + 2] = (byte)(p >> 16);  data[i + 3] = 0;
+    }
+    return data;
+  }
+
+  static byte[] makeIncompressibleData(Random random) {
+    byte[] data = new byte[DATA_SIZE];
+    random.nextBytes(data);
+    return data;
+  }
+
+  static Compression newCompression(String impl, int type) throws Exception {
+    Compression c =
+      (Compression)Class.forName(impl).getDeclaredConstructor().newInstance();
+    c.init(type, LEVEL);
+    return c;
+  }
+
+  // Returns the compressed packets, each with a dummy header.
+  static ArrayList<byte[]> compress(String impl, byte[] data, long[] time)
+                                    throws Exception {
+    Compression deflater = newCompression(impl, Compression.DEFLATER);
+    ArrayList<byte[]> packets = new ArrayList<byte[]>();
+    byte[] buf = new byte[HEADER_SIZE + PACKET_SIZE + MARGIN];
+    int[] len = new int[1];
+    long start = System.nanoTime();
+    for (int i = 0; i < data.length; i += PACKET_SIZE) {
+      int n = Math.min(PACKET_SIZE, data.length - i);
+      System.arraycopy(data, i, buf, HEADER_SIZE, n);
+      len[0] = HEADER_SIZE + n;
+      buf = deflater.compress(buf, HEADER_SIZE, len);
+      packets.add(Arrays.copyOf(buf, len[0] + MARGIN));
+    }
+    time[0] = System.nanoTime() - start;
+    return packets;
+  }
+
+  static byte[] uncompress(String impl, ArrayList<byte[]> packets,
+                           long[] time) throws Exception {
+    Compression inflater = newCompression(impl, Compression.INFLATER);
+    byte[] data = new byte[DATA_SIZE];
+    int[] len = new int[1];
+    int pos = 0;
+    long elapsed = 0;
+    for (byte[] packet : packets) {
+      // uncompress() may keep the buffer that it is passed, so pass a copy.
+      byte[] buf = packet.clone();
+      len[0] = buf.length - MARGIN - HEADER_SIZE;
+      long start = System.nanoTime();
+      buf = inflater.uncompress(buf, HEADER_SIZE, len);
+      elapsed += System.nanoTime() - start;
+      if (buf == null)
+        throw new Exception(impl + ": decompression failed");
+      System.arraycopy(buf, HEADER_SIZE, data, pos, len[0]);
+      pos += len[0];
+    }
+    time[0] = elapsed;
+    return data;
+  }
+
+  static double mbps(long bytes, long ns) {
+    return (double)bytes * 1000. / (double)ns;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    Random random = new Random(1);
+    byte[][] datasets = {
+      makeCompressibleData(random), makeIncompressibleData(random)
+    };
+    String[] datasetNames = { "Compressible", "Incompressible" };
+    long[] time = new long[1];
+
+    System.out.println("Data            Implementation  Ratio    " +
+                       "Compress (MB/s)  Uncompress (MB/s)");
+    for (int d = 0; d < datasets.length; d++) {
+      byte[] data = datasets[d];
+      ArrayList<ArrayList<byte[]>> streams = new ArrayList<ArrayList<byte[]>>();
+
+      for (int i = 0; i < IMPLS.length; i++) {
+        long best = Long.MAX_VALUE;
+        ArrayList<byte[]> packets = null;
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+          packets = compress(IMPLS[i], data, time);
+          best = Math.min(best, time[0]);
+        }
+        streams.add(packets);
+        long compressed = 0;
+        for (byte[] packet : packets)
+          compressed += packet.length - MARGIN - HEADER_SIZE;
+
+        long bestUncompress = Long.MAX_VALUE;
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+          uncompress(IMPLS[i], packets, time);
+          bestUncompress = Math.min(bestUncompress, time[0]);
+        }
+
+        System.out.format("%-15s %-15s %-8.2f %-16.1f %.1f\n",
+                          datasetNames[d], NAMES[i],
+                          (double)data.length / (double)compressed,
+                          mbps(data.length, best),
+                          mbps(data.length, bestUncompress));
+      }
+
+      // Each implementation must be able to decompress the output of every
+      // implementation.
+      for (int i = 0; i < IMPLS.length; i++) {
+        for (int j = 0; j < IMPLS.length; j++) {
+          if (!Arrays.equals(uncompress(IMPLS[j], streams.get(i), time), data))
+            throw new Exception(NAMES[j] + " could not decompress data " +
+                                "compressed with " + NAMES[i]);
+        }
+      }
+    }
+  }
+}
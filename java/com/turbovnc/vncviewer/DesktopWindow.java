@@ -40,8 +40,10 @@ import java.lang.reflect.*;
 import java.nio.*;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
+import java.util.*;
 import javax.swing.*;
 
+import com.turbovnc.rdr.FlightRecorder;
 import com.turbovnc.rfb.*;
 import com.turbovnc.rfb.Cursor;
 import com.turbovnc.rfb.Point;
@@ -115,6 +117,30 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   // EDT
   public void setViewport(Viewport viewport) {
     viewport.setChild(this);
+    frameInterval = getFrameInterval(viewport.getGraphicsConfiguration());
+  }
+
+  // getFrameInterval() returns the minimum interval (in nanoseconds) between
+  // repaints, based on MaxFrameRate or, if MaxFrameRate is 0, on the refresh
+  // rate of the display device.  0 = repaints are not paced.
+  static long getFrameInterval(GraphicsConfiguration gc) {
+    int rate = VncViewer.maxFrameRate.getValue();
+    if (rate < 0)
+      return 0;
+    if (rate == 0) {
+      try {
+        GraphicsDevice gd = (gc != null ? gc.getDevice() :
+          GraphicsEnvironment.getLocalGraphicsEnvironment()
+                             .getDefaultScreenDevice());
+        rate = gd.getDisplayMode().getRefreshRate();
+      } catch (Exception e) {
+        vlog.debug("Could not detect display refresh rate: " + e.toString());
+      }
+      if (rate <= 0)
+        rate = DEFAULT_FRAME_RATE;
+      vlog.debug("Display refresh rate = " + rate + " Hz");
+    }
+    return 1000000000L / rate;
   }
 
   // RFB thread
@@ -157,6 +183,19 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
         y * ((cursor.width() + 7) / 8), maskBytesPerRow);
     }
 
+    CursorKey key = new CursorKey((int[])cursor.data, cursor.mask,
+                                  cursor.width(), cursor.height(), hotspot,
+                                  scaleWidthRatio, scaleHeightRatio);
+    java.awt.Cursor cachedCursor = cursorCache.get(key);
+    if (cachedCursor != null) {
+      cc.cursorCacheHits++;
+      softCursor = cachedCursor;
+      setCursor(softCursor);
+      cursorAvailable = true;
+      return;
+    }
+    cc.cursorCacheMisses++;
+
     MemoryImageSource cursorSrc =
       new MemoryImageSource(cursor.width(), cursor.height(),
                             ColorModel.getRGBdefault(), (int[])cursor.data, 0,
@@ -187,6 +226,7 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     cursorImage.flush();
 
     if (softCursor != null) {
+      cursorCache.put(key, softCursor);
       setCursor(softCursor);
       cursorAvailable = true;
       return;
@@ -200,6 +240,48 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     return;
   }
 
+  // Servers tend to send the same few cursor shapes over and over, and
+  // creating a custom cursor can require a round trip to the window system, so
+  // we cache the cursors we have already created.  The key includes the
+  // converted pixel data, so a pixel format change naturally results in a new
+  // cache entry.
+  static final class CursorKey {
+    CursorKey(int[] data_, byte[] mask_, int width_, int height_,
+              Point hotspot, float scaleX_, float scaleY_) {
+      data = data_;  mask = mask_;
+      width = width_;  height = height_;
+      hotspotX = hotspot.x;  hotspotY = hotspot.y;
+      scaleX = scaleX_;  scaleY = scaleY_;
+      int h = Arrays.hashCode(data);
+      h = 31 * h + Arrays.hashCode(mask);
+      h = 31 * h + width;
+      h = 31 * h + height;
+      h = 31 * h + hotspotX;
+      h = 31 * h + hotspotY;
+      h = 31 * h + Float.floatToIntBits(scaleX);
+      hash = 31 * h + Float.floatToIntBits(scaleY);
+    }
+
+    public int hashCode() { return hash; }
+
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof CursorKey)) return false;
+      CursorKey key = (CursorKey)obj;
+      return hash == key.hash && width == key.width &&
+        height == key.height && hotspotX == key.hotspotX &&
+        hotspotY == key.hotspotY && scaleX == key.scaleX &&
+        scaleY == key.scaleY && Arrays.equals(data, key.data) &&
+        Arrays.equals(mask, key.mask);
+    }
+
+    private final int[] data;
+    private final byte[] mask;
+    private final int width, height, hotspotX, hotspotY;
+    private final float scaleX, scaleY;
+    private final int hash;
+  }
+
   // RFB thread
   public void setServerPF(PixelFormat pf) {
     im.setPF(pf);
@@ -229,10 +311,56 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   }
 
   // RFB thread: Update the actual window with the changed parts of the
-  // framebuffer.
+  // framebuffer.  Repaints are paced so that at most one is posted per display
+  // refresh interval.  If an update ends before the interval has elapsed, then
+  // its damage is merged with that of subsequent updates and painted when the
+  // interval expires.  Otherwise, continuous updates over a fast network can
+  // post hundreds of repaints per second and flood the EDT.
   public void updateWindow() {
+    long interval = frameInterval;
+    if (interval > 0 && cc.viewer.benchFile == null) {
+      long now = System.nanoTime();
+      synchronized(damage) {
+        if (damage.isEmpty())
+          return;
+        if (now - lastFrameTime < interval) {
+          cc.framesCoalesced++;
+          if (!frameTimer.isRunning()) {
+            frameTimer.setInitialDelay(
+              (int)Math.max((lastFrameTime + interval - now + 999999) /
+                            1000000L, 1));
+            frameTimer.start();
+          }
+          return;
+        }
+        lastFrameTime = now;
+      }
+    }
+    blit();
+  }
+
+  // EDT: paintDeferredFrame() is called when the frame timer expires.
+  void paintDeferredFrame() {
+    synchronized(damage) {
+      if (damage.isEmpty())
+        return;
+      lastFrameTime = System.nanoTime();
+    }
+    blit();
+  }
+
+  // RFB thread or EDT
+  private void blit() {
     double tBlitStart = getTime();
-    Rect r = damage;
+    Rect r;
+    synchronized(damage) {
+      r = new Rect(damage.tl, damage.br);
+      damage.clear();
+    }
+    Object event = null;
+    if (FlightRecorder.enabled)
+      event = FlightRecorder.recorder.beginBlit();
+    int bx = r.tl.x, by = r.tl.y, bw = r.width(), bh = r.height();
     cc.blitPixels += r.width() * r.height();
     if (!r.isEmpty()) {
       if (cc.cp.width != scaledWidth || cc.cp.height != scaledHeight) {
@@ -277,10 +405,13 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
         else
           repaint(x, y, r.width(), r.height());
       }
-      damage.clear();
     }
-    cc.tBlit += getTime() - tBlitStart;
+    double tBlitEnd = getTime();
+    cc.tBlit += tBlitEnd - tBlitStart;
     cc.blits += 1;
+    cc.metrics.blitTime.record((long)((tBlitEnd - tBlitStart) * 1.0e6));
+    if (FlightRecorder.enabled)
+      FlightRecorder.recorder.endBlit(event, bx, by, bw, bh);
   }
 
   // resize() is called when the desktop has changed size.  See
@@ -704,14 +835,16 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
 
   // RFB thread
   void damageRect(int x, int y, int w, int h) {
-    if (damage.isEmpty()) {
-      damage.setXYWH(x, y, w, h);
-    } else if (x >= 0 && y >= 0 && w > 0 && h > 0) {
-      int x1 = Math.min(damage.tl.x, x);
-      int y1 = Math.min(damage.tl.y, y);
-      int x2 = Math.max(damage.br.x, x + w);
-      int y2 = Math.max(damage.br.y, y + h);
-      damage.setXYWH(x1, y1, x2 - x1, y2 - y1);
+    synchronized(damage) {
+      if (damage.isEmpty()) {
+        damage.setXYWH(x, y, w, h);
+      } else if (x >= 0 && y >= 0 && w > 0 && h > 0) {
+        int x1 = Math.min(damage.tl.x, x);
+        int y1 = Math.min(damage.tl.y, y);
+        int x2 = Math.max(damage.br.x, x + w);
+        int y2 = Math.max(damage.br.y, y + h);
+        damage.setXYWH(x1, y1, x2 - x1, y2 - y1);
+      }
     }
   }
 
@@ -816,6 +949,15 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   ManagedPixelBuffer cursorBacking;
   int cursorBackingX, cursorBackingY;
   java.awt.Cursor softCursor, noCursor;
+  static final int CURSOR_CACHE_SIZE = 32;
+  LinkedHashMap<CursorKey, java.awt.Cursor> cursorCache =
+    new LinkedHashMap<CursorKey, java.awt.Cursor>(CURSOR_CACHE_SIZE, 0.75f,
+                                                  true) {
+      protected boolean removeEldestEntry(
+        Map.Entry<CursorKey, java.awt.Cursor> eldest) {
+        return size() > CURSOR_CACHE_SIZE;
+      }
+    };
   static Toolkit tk = Toolkit.getDefaultToolkit();
   boolean swingDB;
 
@@ -823,7 +965,18 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   float scaleWidthRatio, scaleHeightRatio;
 
   int lastX, lastY;  // EDT only
-  Rect damage = new Rect();
+  final Rect damage = new Rect();
+
+  static final int DEFAULT_FRAME_RATE = 60;
+  volatile long frameInterval = getFrameInterval(null);
+  long lastFrameTime;
+  final javax.swing.Timer frameTimer =
+    new javax.swing.Timer(0, new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        paintDeferredFrame();
+      }
+    });
+  { frameTimer.setRepeats(false); }
 
   static LogWriter vlog = new LogWriter("DesktopWindow");
 }
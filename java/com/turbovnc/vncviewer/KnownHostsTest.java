@@ -0,0 +1,134 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+/* Benchmark for the built-in SSH client's known_hosts lookups.  This
+   generates known_hosts files of increasing size, half of whose entries have
+   hashed host names (as with ssh-keygen -H), and measures the time required
+   to load each file and to check a host key against it.  "First check" is the
+   time required to check a host key immediately after the file has been
+   loaded, "repeat check" is the time required to check the same host key
+   again, and "reload + check" is the time required to load the file into a
+   new JSch instance and check the same host key, as happens when the viewer
+   opens a new SSH tunnel. */
+
+package com.turbovnc.vncviewer;
+
+import java.io.*;
+import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+import com.jcraft.jsch.HostKeyRepository;
+import com.jcraft.jsch.JSch;
+
+public class KnownHostsTest {
+
+  static final int[] SIZES = { 100, 1000, 10000, 50000 };
+  static final int ITERATIONS = 100;
+
+  static byte[] makeKey(Random random) {
+    byte[] n = new byte[257];
+    random.nextBytes(n);
+    n[0] = 0;
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    try {
+      dos.writeInt(7);
+      dos.writeBytes("ssh-rsa");
+      dos.writeInt(3);
+      dos.write(new byte[] { 1, 0, 1 });
+      dos.writeInt(n.length);
+      dos.write(n);
+    } catch (IOException e) {}
+    return bos.toByteArray();
+  }
+
+  static String hashHost(String host, Random random) throws Exception {
+    byte[] salt = new byte[20];
+    random.nextBytes(salt);
+    Mac mac = Mac.getInstance("HmacSHA1");
+    mac.init(new SecretKeySpec(salt, "HmacSHA1"));
+    byte[] hash = mac.doFinal(host.getBytes("UTF-8"));
+    return "|1|" + DatatypeConverter.printBase64Binary(salt) + "|" +
+           DatatypeConverter.printBase64Binary(hash);
+  }
+
+  static String hostName(int i) {
+    return "host" + i + ".example.com";
+  }
+
+  // Every other entry is hashed.  The key for the last host is returned.
+  static byte[] writeKnownHosts(File file, int entries) throws Exception {
+    Random random = new Random(entries);
+    byte[] key = null;
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    for (int i = 0; i < entries; i++) {
+      key = makeKey(random);
+      String host = hostName(i);
+      if (i % 2 == 1)
+        host = hashHost(host, random);
+      out.println(host + " ssh-rsa " +
+                  DatatypeConverter.printBase64Binary(key));
+    }
+    out.close();
+    return key;
+  }
+
+  static double msec(long ns) {
+    return (double)ns / 1000000.;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    System.out.println("Entries    Load (ms)  First check (ms)  " +
+                       "Repeat check (ms)  Reload + check (ms)");
+    for (int size : SIZES) {
+      File file = File.createTempFile("known_hosts", null);
+      file.deleteOnExit();
+      byte[] key = writeKnownHosts(file, size);
+      String host = hostName(size - 1);
+
+      long start = System.nanoTime();
+      JSch jsch = new JSch();
+      jsch.setKnownHosts(file.getAbsolutePath());
+      HostKeyRepository hkr = jsch.getHostKeyRepository();
+      long load = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int result = hkr.check(host, key);
+      long first = System.nanoTime() - start;
+      if (result != HostKeyRepository.OK)
+        throw new Exception("Host key check failed");
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++)
+        hkr.check(host, key);
+      long repeat = (System.nanoTime() - start) / ITERATIONS;
+
+      start = System.nanoTime();
+      jsch = new JSch();
+      jsch.setKnownHosts(file.getAbsolutePath());
+      jsch.getHostKeyRepository().check(host, key);
+      long reload = System.nanoTime() - start;
+
+      System.out.format("%-10d %-10.2f %-17.2f %-18.4f %.2f\n", size,
+                        msec(load), msec(first), msec(repeat), msec(reload));
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+/* Minimal RFB server that echoes input events into the framebuffer.  This is
+   used along with the viewer's input-to-display latency measurement mode
+   (-Dturbovnc.latency=1) to test for latency regressions without involving a
+   real TurboVNC Server.  A box is drawn at the pointer position, and a second
+   box in the upper left corner changes color whenever a key is pressed.
+   Updates are sent using Raw encoding as soon as an input event has been
+   received, provided that the viewer has an update request pending. */
+
+package com.turbovnc.vncviewer;
+
+import com.turbovnc.network.*;
+import com.turbovnc.rdr.*;
+import com.turbovnc.rfb.*;
+
+public class LatencyTestServer {
+
+  static final int WIDTH = 1024;
+  static final int HEIGHT = 768;
+  static final int POINTER_SIZE = 16;
+  static final int KEY_SIZE = 64;
+  static final int BACKGROUND = 0x404040;
+  static final int POINTER_COLOR = 0xffffff;
+  static final int[] KEY_COLORS = { 0xff0000, 0x00ff00, 0x0000ff };
+
+  LatencyTestServer(Socket sock_) {
+    sock = sock_;
+    is = sock.inStream();
+    os = sock.outStream();
+    fb = new int[WIDTH * HEIGHT];
+    java.util.Arrays.fill(fb, BACKGROUND);
+    pf = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0);
+    drawKeyBox();
+  }
+
+  void run() {
+    handshake();
+    while (true) {
+      int type = is.readU8();
+      switch (type) {
+      case MsgTypes.msgTypeSetPixelFormat:
+        is.skip(3);
+        pf.read(is);
+        if (!pf.trueColour)
+          throw new ErrorException("Colour map pixel formats not supported");
+        break;
+      case MsgTypes.msgTypeSetEncodings:
+        is.skip(1);
+        is.skip(is.readU16() * 4);
+        break;
+      case MsgTypes.msgTypeFramebufferUpdateRequest:
+        boolean incremental = is.readU8() != 0;
+        int x = is.readU16(), y = is.readU16();
+        int w = is.readU16(), h = is.readU16();
+        if (!incremental)
+          addDamage(x, y, w, h);
+        updateRequested = true;
+        break;
+      case MsgTypes.msgTypeKeyEvent:
+        boolean down = is.readU8() != 0;
+        is.skip(2);
+        is.readU32();
+        if (down) {
+          keyColor = (keyColor + 1) % KEY_COLORS.length;
+          drawKeyBox();
+        }
+        break;
+      case MsgTypes.msgTypePointerEvent:
+        is.readU8();
+        int px = is.readU16(), py = is.readU16();
+        if (px != pointerX || py != pointerY) {
+          drawPointerBox(BACKGROUND);
+          pointerX = px;  pointerY = py;
+          drawPointerBox(POINTER_COLOR);
+        }
+        break;
+      case MsgTypes.msgTypeClientCutText:
+        is.skip(3);
+        is.skip(is.readU32());
+        break;
+      default:
+        throw new ErrorException("Unsupported message type " + type);
+      }
+      if (updateRequested && !damage.isEmpty())
+        writeUpdate();
+    }
+  }
+
+  void handshake() {
+    os.writeBytes("RFB 003.008\n".getBytes(), 0, 12);
+    os.flush();
+    is.skip(12);
+    os.writeU8(1);
+    os.writeU8(Security.secTypeNone);
+    os.flush();
+    if (is.readU8() != Security.secTypeNone)
+      throw new ErrorException("Client requested unsupported security type");
+    os.writeU32(0);
+    os.flush();
+    is.readU8();
+
+    os.writeU16(WIDTH);
+    os.writeU16(HEIGHT);
+    pf.write(os);
+    byte[] name = "TurboVNC latency test server".getBytes();
+    os.writeU32(name.length);
+    os.writeBytes(name, 0, name.length);
+    os.flush();
+  }
+
+  void writeUpdate() {
+    int x = Math.max(damage.tl.x, 0), y = Math.max(damage.tl.y, 0);
+    int w = Math.min(damage.br.x, WIDTH) - x;
+    int h = Math.min(damage.br.y, HEIGHT) - y;
+    damage.clear();
+    updateRequested = false;
+    if (w <= 0 || h <= 0) return;
+
+    int bytesPerPixel = pf.bpp / 8;
+    os.writeU8(MsgTypes.msgTypeFramebufferUpdate);
+    os.writeU8(0);
+    os.writeU16(1);
+    os.writeU16(x);
+    os.writeU16(y);
+    os.writeU16(w);
+    os.writeU16(h);
+    os.writeU32(Encodings.encodingRaw);
+    byte[] row = new byte[w * bytesPerPixel];
+    for (int j = y; j < y + h; j++) {
+      int i = 0;
+      for (int k = j * WIDTH + x; k < j * WIDTH + x + w; k++) {
+        int rgb = fb[k];
+        int p = (((rgb >> 16) & 0xff) * pf.redMax / 255) << pf.redShift |
+                (((rgb >> 8) & 0xff) * pf.greenMax / 255) << pf.greenShift |
+                ((rgb & 0xff) * pf.blueMax / 255) << pf.blueShift;
+        for (int b = 0; b < bytesPerPixel; b++) {
+          int shift = pf.bigEndian ? (bytesPerPixel - 1 - b) * 8 : b * 8;
+          row[i++] = (byte)(p >> shift);
+        }
+      }
+      os.writeBytes(row, 0, row.length);
+    }
+    os.flush();
+  }
+
+  void fillRect(int x, int y, int w, int h, int rgb) {
+    int x2 = Math.min(x + w, WIDTH), y2 = Math.min(y + h, HEIGHT);
+    x = Math.max(x, 0);  y = Math.max(y, 0);
+    for (int j = y; j < y2; j++)
+      for (int i = x; i < x2; i++)
+        fb[j * WIDTH + i] = rgb;
+    addDamage(x, y, x2 - x, y2 - y);
+  }
+
+  void drawPointerBox(int rgb) {
+    fillRect(pointerX - POINTER_SIZE / 2, pointerY - POINTER_SIZE / 2,
+             POINTER_SIZE, POINTER_SIZE, rgb);
+  }
+
+  void drawKeyBox() {
+    fillRect(0, 0, KEY_SIZE, KEY_SIZE, KEY_COLORS[keyColor]);
+  }
+
+  void addDamage(int x, int y, int w, int h) {
+    if (w <= 0 || h <= 0) return;
+    if (damage.isEmpty()) {
+      damage.setXYWH(x, y, w, h);
+    } else {
+      damage.tl.x = Math.min(damage.tl.x, x);
+      damage.tl.y = Math.min(damage.tl.y, y);
+      damage.br.x = Math.max(damage.br.x, x + w);
+      damage.br.y = Math.max(damage.br.y, y + h);
+    }
+  }
+
+  public static void main(String[] argv) {
+    int port = 5900;
+    if (argv.length > 0) {
+      try {
+        port = Integer.parseInt(argv[0]);
+      } catch (NumberFormatException e) {
+        System.out.println("USAGE: LatencyTestServer [port]");
+        System.exit(1);
+      }
+      if (port < 100) port += 5900;
+    }
+
+    TcpListener listener = new TcpListener(null, port);
+    System.out.println("Listening on port " + port);
+    while (true) {
+      Socket sock = listener.accept();
+      if (sock == null) break;
+      System.out.println("Accepted connection from " +
+                         sock.getPeerEndpoint());
+      try {
+        new LatencyTestServer(sock).run();
+      } catch (EndOfStream e) {
+        System.out.println("Connection closed");
+      } catch (Exception e) {
+        System.out.println("ERROR: " + e.getMessage());
+      }
+      sock.close();
+    }
+  }
+
+  Socket sock;
+  InStream is;
+  OutStream os;
+  PixelFormat pf;
+  int[] fb;
+  Rect damage = new Rect();
+  boolean updateRequested;
+  int pointerX = -POINTER_SIZE, pointerY = -POINTER_SIZE;
+  int keyColor;
+}
@@ -0,0 +1,110 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// LatencyTracker measures end-to-end input-to-display latency.  When a
+// pointer or key event is sent to the server, it is timestamped (unless a
+// previous probe of the same type is still outstanding.)  The pointer probe
+// is resolved by the first subsequent framebuffer update that modifies the
+// area around the pointer, and the key probe is resolved by the first
+// subsequent non-empty framebuffer update.  The interval between sending the
+// event and finishing the update is recorded in a histogram.  Probes that are
+// not resolved within PROBE_TIMEOUT are discarded, since the input event
+// probably did not cause any visible change.
+//
+// This is enabled by setting the turbovnc.latency system property, and it is
+// most useful with LatencyTestServer, which echoes input events into the
+// framebuffer.
+
+package com.turbovnc.vncviewer;
+
+import com.turbovnc.rdr.Histogram;
+import com.turbovnc.rfb.*;
+
+class LatencyTracker {
+
+  // Size (in pixels) of the area around the pointer in which a change is
+  // considered to be a response to a pointer event
+  static final int NEIGHBORHOOD = 32;
+  static final long PROBE_TIMEOUT = 2000000000L;
+
+  LatencyTracker(Histogram pointerLatency_, Histogram keyLatency_) {
+    pointerLatency = pointerLatency_;
+    keyLatency = keyLatency_;
+  }
+
+  // EDT
+  synchronized void pointerEvent(int x, int y) {
+    long now = System.nanoTime();
+    if (pointerTime != 0 && now - pointerTime < PROBE_TIMEOUT) return;
+    pointerTime = now;
+    pointerRect.setXYWH(x - NEIGHBORHOOD, y - NEIGHBORHOOD,
+                        NEIGHBORHOOD * 2 + 1, NEIGHBORHOOD * 2 + 1);
+  }
+
+  // EDT
+  synchronized void keyEvent() {
+    long now = System.nanoTime();
+    if (keyTime != 0 && now - keyTime < PROBE_TIMEOUT) return;
+    keyTime = now;
+  }
+
+  // RFB thread: Only probes that were outstanding when the update started
+  // can be resolved by it.
+  synchronized void updateStart() {
+    updatePointerTime = pointerTime;
+    updateKeyTime = keyTime;
+    updateHitPointer = false;
+    updateRects = 0;
+  }
+
+  // RFB thread
+  synchronized void rect(Rect r) {
+    updateRects++;
+    if (updatePointerTime != 0 && r.overlaps(pointerRect))
+      updateHitPointer = true;
+  }
+
+  // RFB thread
+  synchronized void updateEnd() {
+    long now = System.nanoTime();
+
+    if (updatePointerTime != 0 && updatePointerTime == pointerTime) {
+      if (now - pointerTime > PROBE_TIMEOUT)
+        pointerTime = 0;
+      else if (updateHitPointer) {
+        pointerLatency.record((now - pointerTime) / 1000);
+        pointerTime = 0;
+      }
+    }
+
+    if (updateKeyTime != 0 && updateKeyTime == keyTime) {
+      if (now - keyTime > PROBE_TIMEOUT)
+        keyTime = 0;
+      else if (updateRects > 0) {
+        keyLatency.record((now - keyTime) / 1000);
+        keyTime = 0;
+      }
+    }
+  }
+
+  private Histogram pointerLatency, keyLatency;
+  private long pointerTime, keyTime, updatePointerTime, updateKeyTime;
+  private Rect pointerRect = new Rect();
+  private boolean updateHitPointer;
+  private int updateRects;
+}
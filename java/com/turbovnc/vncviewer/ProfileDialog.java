@@ -103,6 +103,25 @@ class ProfileDialog extends Dialog {
     rpuHeading.setFont(boldFont);
     rpuDecodeVal = new JLabel("0000000");
 
+    JLabel cursorCacheHeading = new JLabel("Cursor cache (hits/misses):");
+    font = cursorCacheHeading.getFont();
+    boldFont = new Font(font.getFontName(), Font.BOLD, font.getSize());
+    cursorCacheHeading.setFont(boldFont);
+    cursorCacheVal = new JLabel("0000 / 0000");
+
+    JLabel pointerEventsHeading =
+      new JLabel("Pointer events (sent/coalesced):");
+    font = pointerEventsHeading.getFont();
+    boldFont = new Font(font.getFontName(), Font.BOLD, font.getSize());
+    pointerEventsHeading.setFont(boldFont);
+    pointerEventsVal = new JLabel("0000 / 0000");
+
+    JLabel framesHeading = new JLabel("Frames (drawn/coalesced):");
+    font = framesHeading.getFont();
+    boldFont = new Font(font.getFontName(), Font.BOLD, font.getSize());
+    framesHeading.setFont(boldFont);
+    framesVal = new JLabel("0000 / 0000");
+
     Dialog.addGBComponent(recvHeading, panel,
                           1, 0, 1, 1, 0, 0, 0, 0,
                           GridBagConstraints.NONE,
@@ -252,6 +271,39 @@ class ProfileDialog extends Dialog {
                           GridBagConstraints.LINE_START,
                           new Insets(2, 8, 2, 8));
 
+    Dialog.addGBComponent(cursorCacheHeading, panel,
+                          0, 9, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.LINE_START,
+                          new Insets(2, 8, 2, 8));
+    Dialog.addGBComponent(cursorCacheVal, panel,
+                          4, 9, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.WEST,
+                          new Insets(2, 8, 2, 8));
+
+    Dialog.addGBComponent(pointerEventsHeading, panel,
+                          0, 10, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.LINE_START,
+                          new Insets(2, 8, 2, 8));
+    Dialog.addGBComponent(pointerEventsVal, panel,
+                          4, 10, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.WEST,
+                          new Insets(2, 8, 2, 8));
+
+    Dialog.addGBComponent(framesHeading, panel,
+                          0, 11, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.LINE_START,
+                          new Insets(2, 8, 2, 8));
+    Dialog.addGBComponent(framesVal, panel,
+                          4, 11, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.WEST,
+                          new Insets(2, 8, 2, 8));
+
     panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
   }
 
@@ -302,4 +354,5 @@ class ProfileDialog extends Dialog {
   public JLabel mpDecodeVal, mpBlitVal, mpsDecodeVal, mpsBlitVal, mpsTotalVal;
   public JLabel rectDecodeVal, rectBlitVal, pprDecodeVal, pprBlitVal;
   public JLabel rpuDecodeVal;
+  public JLabel cursorCacheVal, pointerEventsVal, framesVal;
 }
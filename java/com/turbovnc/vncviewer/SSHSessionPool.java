@@ -0,0 +1,187 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+/*
+ * SSHSessionPool.java - pool of authenticated SSH sessions
+ *
+ * Tunnels that go through the same gateway as the same user share one SSH
+ * session, so subsequent connections (new connections, reconnects, and
+ * listen-mode connections) need only open a new channel rather than repeating
+ * the TCP connection, key exchange, and authentication.  Each session is
+ * reference-counted.  When the last tunnel using a session is closed, the
+ * session is kept open for turbovnc.sshsessiontimeout seconds (default: 60;
+ * 0 = close immediately) in case another connection needs it.  A keepalive
+ * message is sent whenever nothing has been received from the gateway for
+ * turbovnc.sshkeepalive seconds (default: 30; 0 = never), and the session is
+ * closed if the gateway stops responding to them.
+ */
+
+package com.turbovnc.vncviewer;
+
+import java.util.*;
+
+import com.turbovnc.rfb.*;
+
+import com.jcraft.jsch.Session;
+
+final class SSHSessionPool {
+
+  static final int DEFAULT_TIMEOUT = 60;
+  static final int DEFAULT_KEEPALIVE = 30;
+  static final int KEEPALIVE_COUNT_MAX = 3;
+
+  private SSHSessionPool() {}
+
+  static String getKey(String user, String host, int port) {
+    return user + "@" + host + ":" + port;
+  }
+
+  // Returns a connected session for the given key and increments its
+  // reference count, or returns null if there is no such session.
+  static synchronized Session acquire(String key) {
+    Entry e = pool.get(key);
+    if (e == null)
+      return null;
+    if (!e.session.isConnected()) {
+      vlog.debug("Pooled SSH session " + key + " has been disconnected");
+      pool.remove(key);
+      if (e.refs == 0)
+        close(e);
+      return null;
+    }
+    if (e.expiry != null) {
+      e.expiry.cancel();
+      e.expiry = null;
+    }
+    e.refs++;
+    return e.session;
+  }
+
+  // Adds a newly authenticated session to the pool with a reference count of
+  // 1.
+  static synchronized void add(String key, Session session) {
+    int keepAlive = getIntProperty("turbovnc.sshkeepalive", DEFAULT_KEEPALIVE);
+    if (keepAlive > 0) {
+      try {
+        session.setServerAliveInterval(keepAlive * 1000);
+        session.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+      } catch (com.jcraft.jsch.JSchException e) {
+        vlog.debug("Could not enable SSH keepalives: " + e.getMessage());
+      }
+    }
+    Entry e = new Entry(key, session);
+    pool.put(key, e);
+    entries.put(session, e);
+  }
+
+  // Decrements the reference count of a session that was obtained from
+  // acquire() or passed to add().  When the reference count reaches 0, the
+  // session is closed after the idle timeout.
+  static synchronized void release(Session session) {
+    final Entry e = entries.get(session);
+    if (e == null || --e.refs > 0)
+      return;
+    int timeout = getIntProperty("turbovnc.sshsessiontimeout",
+                                 DEFAULT_TIMEOUT);
+    if (timeout <= 0 || pool.get(e.key) != e || !session.isConnected()) {
+      close(e);
+      return;
+    }
+    vlog.debug("SSH session " + e.key + " is idle");
+    e.expiry = new TimerTask() {
+      public void run() {
+        synchronized (SSHSessionPool.class) {
+          if (e.expiry != this)
+            return;
+          vlog.debug("Closing idle SSH session " + e.key);
+          close(e);
+        }
+      }
+    };
+    getTimer().schedule(e.expiry, timeout * 1000L);
+  }
+
+  // Removes a session that appears to be broken from the pool, so that it is
+  // not returned by acquire() again, and releases it.  The session is closed
+  // once any other tunnels that are still using it have released it.
+  static synchronized void invalidate(Session session) {
+    Entry e = entries.get(session);
+    if (e == null)
+      return;
+    if (pool.get(e.key) == e)
+      pool.remove(e.key);
+    release(session);
+  }
+
+  private static void close(final Entry e) {
+    entries.remove(e.session);
+    if (pool.get(e.key) == e)
+      pool.remove(e.key);
+    e.expiry = null;
+    // Session.disconnect() can block, so don't call it while holding the pool
+    // lock.
+    getTimer().schedule(new TimerTask() {
+      public void run() {
+        if (e.session.getRekeyCount() > 0)
+          vlog.debug("SSH session " + e.key + ": " +
+                     e.session.getRekeyCount() + " key re-exchanges took " +
+                     e.session.getRekeyTime() / 1000000 + " ms, " +
+                     e.session.getRekeyStalledBytes() +
+                     " bytes queued during key re-exchange");
+        e.session.disconnect();
+      }
+    }, 0);
+  }
+
+  private static Timer getTimer() {
+    if (timer == null)
+      timer = new Timer("SSH session pool", true);
+    return timer;
+  }
+
+  private static int getIntProperty(String key, int def) {
+    String prop = System.getProperty(key);
+    if (prop == null)
+      return def;
+    try {
+      return Integer.parseInt(prop);
+    } catch (NumberFormatException e) {
+      vlog.error("Invalid value for " + key + ": " + prop);
+      return def;
+    }
+  }
+
+  private static final class Entry {
+    Entry(String key_, Session session_) {
+      key = key_;  session = session_;  refs = 1;
+    }
+
+    final String key;
+    final Session session;
+    int refs;
+    TimerTask expiry;
+  }
+
+  private static final HashMap<String, Entry> pool =
+    new HashMap<String, Entry>();
+  private static final HashMap<Session, Entry> entries =
+    new HashMap<Session, Entry>();
+  private static Timer timer;
+
+  static LogWriter vlog = new LogWriter("SSHSessionPool");
+}
@@ -25,28 +25,33 @@
 
 package com.turbovnc.vncviewer;
 
-import java.io.File;
+import java.io.*;
 import java.util.*;
+import java.util.prefs.Preferences;
 
 import com.turbovnc.rfb.*;
 import com.turbovnc.rdr.*;
 import com.turbovnc.network.*;
 
+import com.jcraft.jsch.ChannelDirectTCPIP;
+import com.jcraft.jsch.DataSink;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
 
 public class Tunnel {
 
-  public static void createTunnel(Options opts) throws Exception {
+  static final int DIRECT_BUF_SIZE = 262144;
+
+  // createTunnel() returns a socket connected to the VNC server if the tunnel
+  // is direct (see createTunnelDirect()), or null if the tunnel forwards a
+  // local TCP port, in which case opts.serverName is changed to refer to the
+  // forwarded port.
+  public static Socket createTunnel(Options opts) throws Exception {
     int localPort;
     int remotePort;
     String gatewayHost;
     String remoteHost;
 
-    localPort = TcpSocket.findFreeTcpPort();
-    if (localPort == 0)
-      throw new ErrorException("Could not obtain free TCP port");
-
     if (opts.tunnel) {
       gatewayHost = Hostname.getHost(opts.serverName);
       remoteHost = "localhost";
@@ -71,12 +76,22 @@ public class Tunnel {
         pattern = System.getenv("VNC_VIA_CMD");
     }
 
-    if (opts.extSSH || (pattern != null && pattern.length() > 0))
+    boolean extSSH = opts.extSSH || (pattern != null && pattern.length() > 0);
+    if (!extSSH && VncViewer.getBooleanProperty("turbovnc.directtunnel",
+                                                true))
+      return createTunnelDirect(gatewayHost, remoteHost, remotePort, opts);
+
+    localPort = TcpSocket.findFreeTcpPort();
+    if (localPort == 0)
+      throw new ErrorException("Could not obtain free TCP port");
+
+    if (extSSH)
       createTunnelExt(gatewayHost, remoteHost, remotePort, localPort, pattern,
                       opts);
     else
       createTunnelJSch(gatewayHost, remoteHost, remotePort, localPort, opts);
     opts.serverName = "localhost::" + localPort;
+    return null;
   }
 
   /* Create a tunnel using the builtin JSch SSH client */
@@ -84,6 +99,135 @@ public class Tunnel {
   private static void createTunnelJSch(String gatewayHost, String remoteHost,
                                        int remotePort, int localPort,
                                        Options opts) throws Exception {
+    // The forwarding lasts for the lifetime of the viewer, so the session is
+    // never released.
+    String key = getSessionKey(gatewayHost, opts);
+    Session session = SSHSessionPool.acquire(key);
+    if (session != null) {
+      vlog.debug("Reusing SSH session " + key);
+    } else {
+      session = openSession(gatewayHost, opts);
+      SSHSessionPool.add(key, session);
+    }
+    vlog.debug("Forwarding local port " + localPort + " to " + remoteHost +
+               ":" + remotePort + " (relative to gateway)");
+    session.setPortForwardingL(localPort, remoteHost, remotePort);
+  }
+
+  /* Create a direct tunnel using the builtin JSch SSH client.  Rather than
+     forwarding a local TCP port, which requires the RFB data to pass through
+     the loopback interface and two additional threads, the RFB streams are
+     bound to an SSH channel through in-memory buffers.  The SSH session
+     thread hands the buffers into which incoming packets were decrypted to
+     the RFB input stream, which copies the data out of them and returns them
+     to the session's buffer pool, and the viewer's sender thread writes
+     outgoing data directly to the channel.
+     If a pooled session to the same gateway is available (see
+     SSHSessionPool), then the channel is opened on that session.  The
+     session is released when the channel is closed.
+     Set the turbovnc.directtunnel system property to 0 to use port forwarding
+     instead. */
+
+  private static Socket createTunnelDirect(String gatewayHost,
+                                           String remoteHost, int remotePort,
+                                           Options opts) throws Exception {
+    String key = getSessionKey(gatewayHost, opts);
+    Session session = SSHSessionPool.acquire(key);
+    if (session != null) {
+      vlog.debug("Reusing SSH session " + key);
+      try {
+        return openDirectChannel(session, remoteHost, remotePort);
+      } catch (com.jcraft.jsch.JSchException e) {
+        // If the pooled session has been disconnected, then fall back to a new
+        // session.  Otherwise, the server refused the channel (for instance,
+        // because nothing is listening on the VNC port), and a new session
+        // would fail in the same way.
+        if (session.isConnected()) {
+          SSHSessionPool.release(session);
+          throw e;
+        }
+        vlog.debug("Could not open channel on pooled SSH session: " +
+                   e.getMessage());
+        SSHSessionPool.invalidate(session);
+      } catch (Exception e) {
+        SSHSessionPool.release(session);
+        throw e;
+      }
+    }
+    session = openSession(gatewayHost, opts);
+    SSHSessionPool.add(key, session);
+    try {
+      return openDirectChannel(session, remoteHost, remotePort);
+    } catch (Exception e) {
+      SSHSessionPool.release(session);
+      throw e;
+    }
+  }
+
+  private static Socket openDirectChannel(final Session session,
+                                          String remoteHost, int remotePort)
+                                          throws Exception {
+    vlog.debug("Opening direct channel to " + remoteHost + ":" + remotePort +
+               " (relative to gateway)");
+    final ChannelDirectTCPIP channel =
+      (ChannelDirectTCPIP)session.openChannel("direct-tcpip");
+    channel.setHost(remoteHost);
+    channel.setPort(remotePort);
+    OutputStream channelOut = new FilterOutputStream(channel.getOutputStream()) {
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          channel.disconnect();
+          SSHSessionPool.release(session);
+        }
+      }
+    };
+    final StreamDescriptor fd =
+      new StreamDescriptor(channelOut, DIRECT_BUF_SIZE);
+    final StreamDescriptor.Recycler recycler =
+      new StreamDescriptor.Recycler() {
+        public void recycle(byte[] buf) {
+          channel.recycle(buf);
+        }
+      };
+    channel.setDataSink(new DataSink() {
+      public void put(byte[] buf, int off, int len) throws IOException {
+        fd.put(buf, off, len, recycler);
+      }
+      public void eof() {
+        fd.endOfInput();
+      }
+    });
+    long tStart = System.nanoTime();
+    try {
+      channel.connect();
+    } catch (com.jcraft.jsch.JSchException e) {
+      channel.disconnect();
+      throw e;
+    }
+    vlog.debug("SSH channel open: " + msec(System.nanoTime() - tStart) +
+               " ms");
+    return new StreamSocket(fd, remoteHost, remotePort);
+  }
+
+  private static String getSSHUser(Options opts) {
+    String user = opts.sshUser;
+    if (user == null)
+      user = (String)System.getProperties().get("user.name");
+    return user;
+  }
+
+  private static String getSessionKey(String gatewayHost, Options opts) {
+    return SSHSessionPool.getKey(getSSHUser(opts), gatewayHost,
+                                 VncViewer.sshPort.getValue());
+  }
+
+  private static Session openSession(String gatewayHost, Options opts)
+                                     throws Exception {
     JSch jsch = new JSch();
     String homeDir = new String("");
     try {
@@ -96,6 +240,19 @@ public class Tunnel {
     //       the authenticity of the host key even if the key is in the
     //       known_hosts file.
 
+    // The SSH channel window is auto-tuned based on the measured round-trip
+    // time and throughput.  turbovnc.sshmaxwindow sets the upper bound (in
+    // bytes) for the window size.
+    String maxWindow = System.getProperty("turbovnc.sshmaxwindow");
+    if (maxWindow != null) {
+      try {
+        if (Integer.parseInt(maxWindow) > 0)
+          JSch.setConfig("max_window_size", maxWindow);
+      } catch (NumberFormatException e) {
+        vlog.error("Invalid value for turbovnc.sshmaxwindow: " + maxWindow);
+      }
+    }
+
     File knownHosts = new File(homeDir + "/.ssh/known_hosts");
     if (knownHosts.exists() && knownHosts.canRead())
       jsch.setKnownHosts(knownHosts.getAbsolutePath());
@@ -120,6 +277,31 @@ public class Tunnel {
       privateKeys.add(new File(homeDir + "/.ssh/id_rsa"));
       privateKeys.add(new File(homeDir + "/.ssh/id_dsa"));
     }
+
+    // Try the authentication method and identity that succeeded last time
+    // first.
+    String user = getSSHUser(opts);
+    String authMethods = null;
+    String cachedAuth = null;
+    if (user != null)
+      cachedAuth = getCachedAuth(getSessionKey(gatewayHost, opts));
+    if (cachedAuth != null) {
+      vlog.debug("Last successful SSH authentication: " + cachedAuth);
+      int colon = cachedAuth.indexOf(':');
+      String method = (colon < 0 ? cachedAuth :
+                       cachedAuth.substring(0, colon));
+      authMethods = getAuthMethods(method);
+      if (colon >= 0) {
+        String identity = cachedAuth.substring(colon + 1);
+        for (int i = 1; i < privateKeys.size(); i++) {
+          if (privateKeys.get(i).getAbsolutePath().equals(identity)) {
+            privateKeys.add(0, privateKeys.remove(i));
+            break;
+          }
+        }
+      }
+    }
+
     for (Iterator<File> i = privateKeys.iterator(); i.hasNext();) {
       File privateKey = (File)i.next();
       if (privateKey.exists() && privateKey.canRead()) {
@@ -133,13 +315,12 @@ public class Tunnel {
 
     // username and passphrase will be given via UserInfo interface.
     vlog.debug("Opening SSH tunnel through gateway " + gatewayHost);
-    String user = opts.sshUser;
-    if (user == null)
-      user = (String)System.getProperties().get("user.name");
     Session session = null;
     if (user != null && jsch.getIdentityNames().size() > 0) {
       session = jsch.getSession(user, gatewayHost,
                                 VncViewer.sshPort.getValue());
+      if (authMethods != null)
+        session.setConfig("PreferredAuthentications", authMethods);
       try {
         PasswdDialog dlg = new PasswdDialog(new String("SSH Authentication"),
                                             false, user, false);
@@ -159,11 +340,63 @@ public class Tunnel {
                                 VncViewer.sshPort.getValue());
       session.setPassword(new String(dlg.passwdEntry.getPassword()));
       session.setUserInfo(dlg);
+      if (authMethods != null)
+        session.setConfig("PreferredAuthentications", authMethods);
       session.connect();
     }
-    vlog.debug("Forwarding local port " + localPort + " to " + remoteHost +
-               ":" + remotePort + " (relative to gateway)");
-    session.setPortForwardingL(localPort, remoteHost, remotePort);
+    vlog.debug("SSH connect: " + msec(session.getConnectTime()) +
+               " ms, key exchange: " + msec(session.getKexTime()) +
+               " ms, authentication: " + msec(session.getAuthTime()) + " ms");
+    setCachedAuth(session);
+    return session;
+  }
+
+  /* The SSH authentication method that last succeeded for each
+     user@gateway:port (along with the identity, if the method was
+     publickey) is stored in the user preferences, so that it can be tried
+     first the next time.  If it fails, then the other methods and identities
+     are tried in the usual order. */
+
+  private static final String AUTH_PREFS_NODE = "SSHAuth";
+
+  private static String getCachedAuth(String key) {
+    if (key.length() > Preferences.MAX_KEY_LENGTH)
+      return null;
+    return UserPreferences.get(AUTH_PREFS_NODE, key);
+  }
+
+  private static void setCachedAuth(Session session) {
+    String auth = session.getAuthMethod();
+    if (auth == null)
+      return;
+    if (session.getAuthIdentity() != null)
+      auth += ":" + session.getAuthIdentity();
+    String key = SSHSessionPool.getKey(session.getUserName(),
+                                       session.getHost(), session.getPort());
+    if (key.length() > Preferences.MAX_KEY_LENGTH ||
+        auth.length() > Preferences.MAX_VALUE_LENGTH ||
+        auth.equals(getCachedAuth(key)))
+      return;
+    UserPreferences.set(AUTH_PREFS_NODE, key, auth);
+    UserPreferences.save(AUTH_PREFS_NODE);
+  }
+
+  // Returns the default list of authentication methods with the specified
+  // method moved to the front, or null if the method is not in the list.
+  private static String getAuthMethods(String method) {
+    String[] methods = JSch.getConfig("PreferredAuthentications").split(",");
+    if (!Arrays.asList(methods).contains(method))
+      return null;
+    StringBuilder sb = new StringBuilder(method);
+    for (String m : methods) {
+      if (!m.equals(method))
+        sb.append(",").append(m);
+    }
+    return sb.toString();
+  }
+
+  private static String msec(long ns) {
+    return String.format("%.1f", (double)ns / 1000000.);
   }
 
   /* Create a tunnel using an external SSH client.  This supports the same
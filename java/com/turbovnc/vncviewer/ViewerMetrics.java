@@ -0,0 +1,154 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// ViewerMetrics collects histograms of per-update, per-rectangle, and
+// per-blit statistics for a connection.  Unlike the running totals used by
+// the profiling dialog, the histograms are never reset implicitly, so they
+// capture the worst-case behavior of the connection over its lifetime.  They
+// are published to the platform MBean server under
+// com.turbovnc:type=ViewerMetrics, so they can be monitored with JConsole or
+// any other JMX client.
+
+package com.turbovnc.vncviewer;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.*;
+
+import com.turbovnc.rdr.Histogram;
+import com.turbovnc.rfb.*;
+
+public class ViewerMetrics implements ViewerMetricsMXBean {
+
+  public ViewerMetrics(CConn cc_) {
+    cc = cc_;
+    decodeTime = new Histogram[Encodings.encodingMax + 1];
+  }
+
+  public void register() {
+    if (name != null) return;
+    try {
+      synchronized(ViewerMetrics.class) {
+        name = new ObjectName("com.turbovnc:type=ViewerMetrics,id=" +
+                              nextId++);
+      }
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    } catch (Exception e) {
+      vlog.debug("Could not register metrics MBean: " + e.getMessage());
+      name = null;
+    }
+  }
+
+  public void unregister() {
+    if (name == null) return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (Exception e) {
+      vlog.debug("Could not unregister metrics MBean: " + e.getMessage());
+    }
+    name = null;
+  }
+
+  // RFB thread
+  void recordDecodeTime(int encoding, long us) {
+    if (encoding < 0 || encoding > Encodings.encodingMax) return;
+    Histogram histogram = decodeTime[encoding];
+    if (histogram == null) {
+      synchronized(decodeTime) {
+        if (decodeTime[encoding] == null)
+          decodeTime[encoding] = new Histogram();
+        histogram = decodeTime[encoding];
+      }
+    }
+    histogram.record(us);
+  }
+
+  public String getServerName() {
+    return cc.getServerName();
+  }
+
+  public Histogram.Snapshot getUpdateLatency() {
+    return updateLatency.snapshot();
+  }
+
+  public Map<String, Histogram.Snapshot> getDecodeTime() {
+    Map<String, Histogram.Snapshot> map =
+      new TreeMap<String, Histogram.Snapshot>();
+    synchronized(decodeTime) {
+      for (int i = 0; i <= Encodings.encodingMax; i++) {
+        if (decodeTime[i] != null)
+          map.put(Encodings.encodingName(i), decodeTime[i].snapshot());
+      }
+    }
+    return map;
+  }
+
+  public Histogram.Snapshot getRectSize() {
+    return rectSize.snapshot();
+  }
+
+  public Histogram.Snapshot getBlitTime() {
+    return blitTime.snapshot();
+  }
+
+  public Histogram.Snapshot getUpdateBytes() {
+    return updateBytes.snapshot();
+  }
+
+  public Histogram.Snapshot getReadStall() {
+    return readStall.snapshot();
+  }
+
+  public Histogram.Snapshot getPointerLatency() {
+    return pointerLatency.snapshot();
+  }
+
+  public Histogram.Snapshot getKeyLatency() {
+    return keyLatency.snapshot();
+  }
+
+  public void reset() {
+    updateLatency.reset();
+    rectSize.reset();
+    blitTime.reset();
+    updateBytes.reset();
+    readStall.reset();
+    pointerLatency.reset();
+    keyLatency.reset();
+    synchronized(decodeTime) {
+      for (int i = 0; i <= Encodings.encodingMax; i++) {
+        if (decodeTime[i] != null)
+          decodeTime[i].reset();
+      }
+    }
+  }
+
+  CConn cc;
+  final Histogram updateLatency = new Histogram();
+  final Histogram[] decodeTime;
+  final Histogram rectSize = new Histogram();
+  final Histogram blitTime = new Histogram();
+  final Histogram updateBytes = new Histogram();
+  final Histogram readStall = new Histogram();
+  final Histogram pointerLatency = new Histogram();
+  final Histogram keyLatency = new Histogram();
+  private ObjectName name;
+  private static int nextId = 0;
+
+  static LogWriter vlog = new LogWriter("ViewerMetrics");
+}
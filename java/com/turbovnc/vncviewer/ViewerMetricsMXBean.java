@@ -0,0 +1,39 @@
+/* Copyright (C) 2018 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+package com.turbovnc.vncviewer;
+
+import java.util.Map;
+
+import com.turbovnc.rdr.Histogram;
+
+// Management interface for the viewer's performance histograms.  Times are
+// in microseconds, sizes in pixels or bytes.
+
+public interface ViewerMetricsMXBean {
+  String getServerName();
+  Histogram.Snapshot getUpdateLatency();
+  Map<String, Histogram.Snapshot> getDecodeTime();
+  Histogram.Snapshot getRectSize();
+  Histogram.Snapshot getBlitTime();
+  Histogram.Snapshot getUpdateBytes();
+  Histogram.Snapshot getReadStall();
+  Histogram.Snapshot getPointerLatency();
+  Histogram.Snapshot getKeyLatency();
+  void reset();
+}
@@ -23,6 +23,7 @@ package com.turbovnc.vncviewer;
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
+import javax.swing.event.*;
 import java.lang.reflect.*;
 import java.io.*;
 import java.util.ArrayList;
@@ -46,6 +47,11 @@ public class Viewport extends JFrame {
     sp = new JScrollPane();
     sp.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 0));
     sp.getViewport().setBackground(Color.BLACK);
+    sp.getViewport().addChangeListener(new ChangeListener() {
+      public void stateChanged(ChangeEvent e) {
+        cc.visibleAreaChanged();
+      }
+    });
     InputMap im = sp.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
     int ctrlAltShiftMask = InputEvent.SHIFT_DOWN_MASK |
                            InputEvent.CTRL_DOWN_MASK |
@@ -109,6 +115,12 @@ public class Viewport extends JFrame {
       public void windowClosing(WindowEvent e) {
         cc.close();
       }
+      public void windowIconified(WindowEvent e) {
+        cc.suspendUpdates(true);
+      }
+      public void windowDeiconified(WindowEvent e) {
+        cc.suspendUpdates(false);
+      }
     });
 
     addComponentListener(new ComponentAdapter() {
@@ -911,7 +911,10 @@ public class VncViewer extends javax.swing.JApplet
                           cc.state() == CConnection.RFBSTATE_NORMAL &&
                           !VncViewer.noReconnect.getValue());
           exitStatus = 1;
-          if (cc != null) cc.deleteWindow(true);
+          if (cc != null) {
+            cc.deleteWindow(true);
+            cc.closeSocket();
+          }
         } else if (cc.shuttingDown && embed.getValue()) {
           reportException(new WarningException("Connection closed"));
         } else {
@@ -1117,6 +1120,15 @@ public class VncViewer extends javax.swing.JApplet
   "Maximum permitted length of an outgoing clipboard update (in bytes)",
   1048576);
 
+  static IntParameter maxPointerRate
+  = new IntParameter("MaxPointerRate",
+  "Maximum number of pointer motion events per second that the viewer will " +
+  "send to the server (0 = unlimited.)  Motion events that exceed this rate, " +
+  "as well as motion events that occur while the network connection is " +
+  "unable to accept more data, are coalesced so that only the most recent " +
+  "pointer position is sent.  Button presses and releases are always sent " +
+  "immediately.", 0, 0, 1000);
+
   static BoolParameter noNewConn
   = new BoolParameter("NoNewConn",
   "Always exit after the first connection closes, and do not allow new " +
@@ -1182,6 +1194,14 @@ public class VncViewer extends javax.swing.JApplet
   "using default settings, then you will only be able to connect to the " +
   "server if no one else is already connected.", true);
 
+  static IntParameter updateMargin
+  = new IntParameter("UpdateMargin",
+  "When the remote desktop is larger than the viewer window, request " +
+  "framebuffer updates only for the visible area of the remote desktop, " +
+  "plus this many pixels on each side.  Areas that are scrolled into view " +
+  "are refreshed as soon as they become visible.  -1 = always request " +
+  "updates for the entire remote desktop.", 128, -1, 32767);
+
   // INPUT PARAMETERS
 
   static HeaderParameter inputHeader
@@ -1332,6 +1352,14 @@ public class VncViewer extends javax.swing.JApplet
   "is enabled, then any cursor shape updates from the server are ignored, " +
   "and the local cursor is always displayed.", false);
 
+  static IntParameter maxFrameRate
+  = new IntParameter("MaxFrameRate",
+  "Maximum number of times per second that the viewer will draw framebuffer " +
+  "updates to the screen.  Updates that arrive more quickly than this are " +
+  "combined and drawn at once.  0 = use the refresh rate of the display " +
+  "(or 60, if the refresh rate cannot be detected), -1 = unlimited", 0, -1,
+  1000);
+
   static StringParameter scalingFactor
   = new StringParameter("Scale",
   "Reduce or enlarge the remote desktop image.  The value is interpreted as " +